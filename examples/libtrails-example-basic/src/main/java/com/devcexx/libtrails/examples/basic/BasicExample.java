@@ -18,6 +18,7 @@ package com.devcexx.libtrails.examples.basic;
 
 import com.devcexx.libtrails.EntityTrail;
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.TrailScheduler;
 import com.devcexx.libtrails.Vector3;
 import com.devcexx.libtrails.suppliers.ScatteringSupplier;
 import org.bukkit.Bukkit;
@@ -37,6 +38,7 @@ import java.util.Random;
 
 public class BasicExample extends JavaPlugin implements Listener {
     private final Map<Entity, EntityTrail> trails = new HashMap<>();
+    private final TrailScheduler scheduler = new TrailScheduler(this);
     private final Particle[] particles = new Particle[] {
             Particle.builder()
                     .effect(Effect.FIREWORKS_SPARK)
@@ -65,6 +67,13 @@ public class BasicExample extends JavaPlugin implements Listener {
     @Override
     public void onEnable() {
         getServer().getPluginManager().registerEvents(this, this);
+        scheduler.start();
+    }
+
+    @Override
+    public void onDisable() {
+        scheduler.stop();
+        trails.clear();
     }
 
     @EventHandler
@@ -80,7 +89,7 @@ public class BasicExample extends JavaPlugin implements Listener {
                             , 1);
 
                     trails.put(e.getProjectile(), t);
-                    t.begin();
+                    t.begin(scheduler);
                 }
             }, 5L);
         }
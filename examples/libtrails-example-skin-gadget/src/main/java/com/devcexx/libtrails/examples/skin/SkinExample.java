@@ -19,6 +19,7 @@ package com.devcexx.libtrails.examples.skin;
 import com.devcexx.libtrails.LinearTransf;
 import com.devcexx.libtrails.Vector3;
 import com.devcexx.libtrails.suppliers.BitmapSupplier;
+import com.devcexx.libtrails.suppliers.ScalingFilter;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Maps;
 import org.bukkit.Bukkit;
@@ -140,7 +141,8 @@ public class SkinExample extends JavaPlugin implements Listener {
 
     public BitmapSupplier buildSupplier(BufferedImage img) {
         return new BitmapSupplier(Effect.COLOURED_DUST, 1, 60,
-                new SkinPixelProvider(img), 8, 8, 2.0f, 2.0f, 8.0f, 8.0f);
+                new SkinPixelProvider(img).toRaster(), 2.0f, 2.0f, 8.0f, 8.0f,
+                ScalingFilter.NEAREST);
     }
 
     public CachedSkin getDefaultSkin(PlayerState p) {
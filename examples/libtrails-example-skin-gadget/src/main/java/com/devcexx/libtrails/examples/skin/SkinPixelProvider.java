@@ -16,27 +16,40 @@
 
 package com.devcexx.libtrails.examples.skin;
 
+import com.devcexx.libtrails.suppliers.Raster;
+
 import java.awt.image.BufferedImage;
 import java.util.function.IntBinaryOperator;
 
 public class SkinPixelProvider implements IntBinaryOperator {
-    private final BufferedImage skin;
+    private static final int SIZE = 8;
+
+    private final int[] pixels = new int[SIZE * SIZE];
 
     public SkinPixelProvider(BufferedImage skin) {
-        this.skin = skin;
+        //Both the head and the helmet are read in a single call each,
+        //instead of reading them pixel by pixel.
+        int[] head = skin.getRGB(8, 8, SIZE, SIZE, null, 0, SIZE);
+        int[] helmet = skin.getRGB(40, 8, SIZE, SIZE, null, 0, SIZE);
+
+        for (int i = 0; i < pixels.length; i++) {
+            //Test for helmet
+            if (((helmet[i] >> 24) & 0xFF) > 0) { //Check for total transparency
+                pixels[i] = helmet[i];
+            } else {
+                //If there's not helmet at that position, use the
+                //color of the normal head.
+                pixels[i] = head[i];
+            }
+        }
     }
 
     @Override
     public int applyAsInt(int x, int y) {
+        return pixels[y * SIZE + x];
+    }
 
-        //Test for helmet
-        int color = skin.getRGB(40 + x, 8 + y);
-        if (((color >> 24) & 0xFF) > 0) { //Check for total transparency
-            return color;
-        } else {
-            //If there's not helmet at that position, return the
-            //color of the normal head.
-            return skin.getRGB(8 + x, 8 + y);
-        }
+    public Raster toRaster() {
+        return new Raster(SIZE, SIZE, pixels.clone());
     }
 }
@@ -0,0 +1,138 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ParticleSupplier} that serves the precomputed output of a periodic
+ * supplier. All the frames of the period of the source supplier are evaluated
+ * once, when this supplier is created, and stored in flat primitive arrays,
+ * so no math is performed when the frames are supplied.
+ *
+ * Note that only the position and the particle of each frame are baked: the
+ * properties of the particles that depend on the tick, such as its offset or
+ * speed, are still evaluated when they are spawned.
+ */
+public class BakedSupplier implements ParticleSupplier {
+
+    /**
+     * The number of frames of the baked period.
+     */
+    public final int period;
+
+    private final Particle[] palette;
+    private final int[] frameStart;
+    private final int[] particles;
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] zs;
+
+    /**
+     * Bakes the specified supplier.
+     * @param source the supplier to bake. Its output must only depend on
+     *               the value of the tick modulo the specified period.
+     * @param period the period of the supplier, in ticks.
+     */
+    public BakedSupplier(ParticleSupplier source, int period) {
+        if (period <= 0)
+            throw new IllegalArgumentException("The period must be positive");
+
+        this.period = period;
+        this.frameStart = new int[period + 1];
+
+        ParticleBuffer buffer = new ParticleBuffer();
+        for (int t = 0; t < period; t++) {
+            frameStart[t] = buffer.size();
+            source.supplyInto(t, buffer);
+        }
+
+        int size = buffer.size();
+        frameStart[period] = size;
+        this.particles = Arrays.copyOf(buffer.indices(), size);
+        this.xs = Arrays.copyOf(buffer.xs(), size);
+        this.ys = Arrays.copyOf(buffer.ys(), size);
+        this.zs = Arrays.copyOf(buffer.zs(), size);
+
+        this.palette = new Particle[buffer.paletteSize()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = buffer.paletteEntry(i);
+        }
+    }
+
+    /**
+     * Returns the total number of particles stored in all the frames.
+     * @return the total number of baked particles.
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Returns the number of particles of the frame served at the specified
+     * tick.
+     * @param tick the tick.
+     * @return the number of particles of the frame.
+     */
+    public int frameSize(int tick) {
+        int frame = Math.floorMod(tick, period);
+        return frameStart[frame + 1] - frameStart[frame];
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        int frame = Math.floorMod(tick, period);
+        return IntStream.range(frameStart[frame], frameStart[frame + 1])
+                .mapToObj(i -> new SuppliedParticle(palette[particles[i]],
+                        new Vector3(xs[i], ys[i], zs[i])));
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        int frame = Math.floorMod(tick, period);
+        for (int i = frameStart[frame]; i < frameStart[frame + 1]; i++) {
+            sink.accept(palette[particles[i]], xs[i], ys[i], zs[i]);
+        }
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return frameSize(tick) > 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        for (int i = 0; i < period; i++) {
+            if (frameSize(tick + i) > 0) {
+                return tick + i;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int period() {
+        return period;
+    }
+
+    @Override
+    public ParticleSupplier bake() {
+        return this;
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Effect;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Class that allows to store the baked frames of a periodic
+ * {@link ParticleSupplier} in a file, and to load them back through a
+ * {@link MappedBakedSupplier}, which reads them directly from the file mapped
+ * into memory. This way, suppliers that are expensive to build can be
+ * computed once, instead of on every start of the server.
+ *
+ * The file starts with a header with the following fields, in big endian:
+ * <ul>
+ *     <li>The magic number {@code 0x4C54424B} (LTBK).</li>
+ *     <li>The version of the format, which is 1.</li>
+ *     <li>The period of the supplier, in ticks.</li>
+ *     <li>The number of distinct particles.</li>
+ *     <li>The total number of baked particles.</li>
+ *     <li>The position of the frame table, as a long.</li>
+ *     <li>The position of the particle table, as a long.</li>
+ * </ul>
+ * The header is followed by the particles of all the frames, each one written
+ * as the index of its particle in the particle table, as an int, and its
+ * position, as three floats. The frame table contains the index of the first
+ * particle of each frame, plus the total number of particles. The particle
+ * table contains the properties of each particle: the name of its effect, its
+ * id, data, offsets, speed, count and radius.
+ *
+ * Since the properties of the particles are stored as constants, the ones
+ * that depend on the tick are evaluated at the tick 0 when the file is
+ * written. To keep them, the original particles can be passed to
+ * {@link #load(Path, Particle[])}.
+ */
+public abstract class BakedTrailFile {
+
+    /**
+     * The magic number of the baked trail files.
+     */
+    public static final int MAGIC = 0x4C54424B;
+
+    /**
+     * The version of the format of the files written by this class.
+     */
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 36;
+    static final int RECORD_SIZE = 16;
+
+    /**
+     * Bakes the specified supplier into a file.
+     * @param supplier the supplier.
+     * @param period the period of the supplier, in ticks. Its output must
+     *               only depend on the value of the tick modulo this period.
+     * @param file the file that will be written.
+     * @throws IOException if the file cannot be written, or if the baked
+     * trail is too big to be mapped. The file is deleted in that case.
+     */
+    public static void write(ParticleSupplier supplier, int period, Path file)
+            throws IOException {
+        if (period <= 0)
+            throw new IllegalArgumentException("The period must be positive");
+
+        try {
+            writeFile(supplier, period, file);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+    }
+
+    private static void writeFile(ParticleSupplier supplier, int period,
+                                  Path file) throws IOException {
+        int[] frameStart = new int[period + 1];
+        ParticleBuffer buffer = new ParticleBuffer();
+        long size;
+
+        //The palette of the buffer may be discarded between frames, so the
+        //file has its own palette, and the indices of each frame are
+        //remapped into it.
+        Map<Particle, Integer> paletteIndex = new IdentityHashMap<>();
+        List<Particle> palette = new ArrayList<>();
+        int[] remap = new int[0];
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(new byte[HEADER_SIZE]);
+            int count = 0;
+            for (int t = 0; t < period; t++) {
+                frameStart[t] = count;
+                buffer.clear();
+                supplier.supplyInto(t, buffer);
+                //The check is done before writing each frame, so a trail
+                //that is too big fails before the whole file is written.
+                if (HEADER_SIZE + ((long) count + buffer.size()) * RECORD_SIZE
+                        > Integer.MAX_VALUE)
+                    throw new IOException("The baked trail is too big to be " +
+                            "mapped");
+                if (remap.length < buffer.paletteSize()) {
+                    remap = new int[buffer.paletteSize()];
+                }
+                for (int i = 0; i < buffer.paletteSize(); i++) {
+                    Particle p = buffer.paletteEntry(i);
+                    Integer index = paletteIndex.get(p);
+                    if (index == null) {
+                        index = palette.size();
+                        palette.add(p);
+                        paletteIndex.put(p, index);
+                    }
+                    remap[i] = index;
+                }
+                for (int i = 0; i < buffer.size(); i++) {
+                    out.writeInt(remap[buffer.indices()[i]]);
+                    out.writeFloat(buffer.x(i));
+                    out.writeFloat(buffer.y(i));
+                    out.writeFloat(buffer.z(i));
+                }
+                count += buffer.size();
+            }
+            frameStart[period] = count;
+
+            for (int start : frameStart) {
+                out.writeInt(start);
+            }
+            for (Particle p : palette) {
+                out.writeUTF(p.getEffect().name());
+                out.writeInt(p.getId());
+                out.writeInt(p.getData());
+                out.writeFloat(p.getOffsetX().apply(0));
+                out.writeFloat(p.getOffsetY().apply(0));
+                out.writeFloat(p.getOffsetZ().apply(0));
+                out.writeFloat(p.getSpeed().apply(0));
+                out.writeInt(p.getCount().apply(0));
+                out.writeInt(p.getRadius());
+            }
+            size = out.size();
+        }
+
+        long table = HEADER_SIZE + (long) frameStart[period] * RECORD_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(period)
+                .putInt(palette.size()).putInt(frameStart[period])
+                .putLong(table).putLong(table + (period + 1) * 4L);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+        }
+
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("The baked trail is too big to be mapped");
+    }
+
+    /**
+     * Loads a baked trail file, rebuilding its particles from the properties
+     * stored in it.
+     * @param file the file.
+     * @return a supplier that serves the frames stored in the file.
+     * @throws IOException if the file cannot be read, or if it is not a
+     * valid baked trail file.
+     */
+    public static MappedBakedSupplier load(Path file) throws IOException {
+        return load(file, null);
+    }
+
+    /**
+     * Loads a baked trail file, using the specified particles instead of the
+     * ones stored in it.
+     * @param file the file.
+     * @param palette the particles that will replace the ones stored in the
+     *                file, in the same order as they were first emitted by
+     *                the baked supplier, or null to use the stored ones.
+     * @return a supplier that serves the frames stored in the file.
+     * @throws IOException if the file cannot be read, if it is not a valid
+     * baked trail file or if the number of particles doesn't match.
+     */
+    public static MappedBakedSupplier load(Path file, Particle[] palette)
+            throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("The baked trail is too big to be " +
+                        "mapped");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a baked trail file");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported baked trail version: "
+                    + buffer.getInt(4));
+
+        int period = buffer.getInt(8);
+        int paletteSize = buffer.getInt(12);
+        int count = buffer.getInt(16);
+        long table = buffer.getLong(20);
+        long particles = buffer.getLong(28);
+        if (period <= 0 || count < 0 || paletteSize < 0
+                || table != HEADER_SIZE + (long) count * RECORD_SIZE
+                || particles != table + (period + 1) * 4L
+                || particles > buffer.capacity())
+            throw new IOException("Corrupted baked trail file");
+
+        //Each particle of the palette takes at least 34 bytes: the length of
+        //the name of its effect, and 32 bytes of properties.
+        if (paletteSize > (buffer.capacity() - particles) / 34)
+            throw new IOException("Corrupted baked trail file");
+
+        if (palette == null) {
+            palette = readPalette(buffer, (int) particles, paletteSize);
+        } else if (palette.length != paletteSize) {
+            throw new IOException("The baked trail has " + paletteSize
+                    + " particles, but " + palette.length + " were given");
+        } else {
+            palette = palette.clone();
+        }
+
+        int[] frameStart = new int[period + 1];
+        for (int i = 0; i <= period; i++) {
+            frameStart[i] = buffer.getInt((int) table + i * 4);
+            if (frameStart[i] < (i == 0 ? 0 : frameStart[i - 1]))
+                throw new IOException("Corrupted baked trail file");
+        }
+        if (frameStart[0] != 0 || frameStart[period] != count)
+            throw new IOException("Corrupted baked trail file");
+
+        //The palette indices are checked once here, so a corrupted file
+        //doesn't fail later on every tick.
+        for (int i = 0; i < count; i++) {
+            int index = buffer.getInt(HEADER_SIZE + i * RECORD_SIZE);
+            if (index < 0 || index >= paletteSize)
+                throw new IOException("Corrupted baked trail file");
+        }
+        return new MappedBakedSupplier(buffer, period, palette, frameStart);
+    }
+
+    /**
+     * Loads the specified baked trail file or, if it doesn't exist or it
+     * cannot be loaded, bakes the supplier returned by the specified factory
+     * into it and loads it. The file is replaced atomically, so a failure
+     * while it is written doesn't leave a corrupted file behind.
+     * @param file the file.
+     * @param factory the factory that builds the supplier when the file must
+     *                be baked. The supplier must be periodic.
+     * @return a supplier that serves the frames stored in the file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static MappedBakedSupplier loadOrBake(
+            Path file, Supplier<? extends ParticleSupplier> factory)
+            throws IOException {
+        if (Files.isRegularFile(file)) {
+            try {
+                return load(file);
+            } catch (IOException ex) {
+                //The file is outdated or corrupted, so it is baked again.
+            }
+        }
+
+        ParticleSupplier supplier = factory.get();
+        if (supplier.period() <= 0)
+            throw new IllegalArgumentException("The supplier is not periodic");
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(),
+                ".tmp");
+        try {
+            write(supplier, supplier.period(), tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return load(file);
+    }
+
+    private static Particle[] readPalette(ByteBuffer buffer, int position,
+                                          int size) throws IOException {
+        Particle[] palette = new Particle[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                int length = buffer.getShort(position) & 0xFFFF;
+                byte[] name = new byte[length];
+                for (int j = 0; j < length; j++) {
+                    name[j] = buffer.get(position + 2 + j);
+                }
+                position += 2 + length;
+
+                palette[i] = Particle.builder()
+                        .effect(Effect.valueOf(new String(name,
+                                StandardCharsets.UTF_8)))
+                        .id(buffer.getInt(position))
+                        .data(buffer.getInt(position + 4))
+                        .offsetX(buffer.getFloat(position + 8))
+                        .offsetY(buffer.getFloat(position + 12))
+                        .offsetZ(buffer.getFloat(position + 16))
+                        .speed(buffer.getFloat(position + 20))
+                        .count(buffer.getInt(position + 24))
+                        .radius(buffer.getInt(position + 28)).build();
+                position += 32;
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw new IOException("Corrupted baked trail file", ex);
+        }
+        return palette;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ParticleSupplier} that renders the output of several suppliers
+ * together. The children are kept in an array and are evaluated one after
+ * another, in order, directly into the same sink. Children that are not
+ * active on the current tick are skipped, and the composite supplier is only
+ * active when any of its children is.
+ */
+public class CompositeSupplier implements ParticleSupplier {
+
+    /**
+     * The maximum period that a composite supplier will report. If the least
+     * common multiple of the periods of the children is bigger than this, the
+     * supplier is considered to be not periodic.
+     */
+    private static final int MAX_PERIOD = 1 << 16;
+
+    private final ParticleSupplier[] children;
+    private final int period;
+    private Map<List<ParticleSupplier>, CompositeSupplier> levels;
+
+    /**
+     * Creates a new composite supplier. Children that are also composite
+     * suppliers are flattened into this one.
+     * @param children the suppliers that compose this one.
+     */
+    public CompositeSupplier(ParticleSupplier... children) {
+        List<ParticleSupplier> flat = new ArrayList<>(children.length);
+        for (ParticleSupplier child : children) {
+            if (child instanceof CompositeSupplier) {
+                flat.addAll(Arrays.asList(((CompositeSupplier) child).children));
+            } else if (child != null) {
+                flat.add(child);
+            }
+        }
+        this.children = flat.toArray(new ParticleSupplier[0]);
+        this.period = computePeriod(this.children);
+    }
+
+    private static int computePeriod(ParticleSupplier[] children) {
+        long period = 1;
+        for (ParticleSupplier child : children) {
+            int p = child.period();
+            if (p <= 0) {
+                return 0;
+            }
+            period = period / TrailUtil.gcd((int) period, p) * p;
+            if (period > MAX_PERIOD) {
+                return 0;
+            }
+        }
+        return (int) period;
+    }
+
+    /**
+     * Returns the suppliers that compose this one.
+     * @return an unmodifiable list with the children of this supplier.
+     */
+    public List<ParticleSupplier> getChildren() {
+        return Collections.unmodifiableList(Arrays.asList(children));
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        return Arrays.stream(children)
+                .filter(c -> c.isActive(tick))
+                .flatMap(c -> c.supply(tick));
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        for (ParticleSupplier child : children) {
+            if (child.isActive(tick)) {
+                child.supplyInto(tick, sink);
+            }
+        }
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        for (ParticleSupplier child : children) {
+            if (child.isActive(tick)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int levelsOfDetail() {
+        int levels = 1;
+        for (ParticleSupplier child : children) {
+            levels = Math.max(levels, child.levelsOfDetail());
+        }
+        return levels;
+    }
+
+    /**
+     * Returns a composite of the levels of detail of the children for the
+     * specified distance. The composite created for each combination of
+     * levels is kept, so viewers that see the same levels get the same
+     * instance.
+     */
+    @Override
+    public synchronized ParticleSupplier atDistance(double distance) {
+        ParticleSupplier[] levels = null;
+        for (int i = 0; i < children.length; i++) {
+            ParticleSupplier level = children[i].atDistance(distance);
+            if (level != children[i] && levels == null) {
+                levels = children.clone();
+            }
+            if (levels != null) {
+                levels[i] = level;
+            }
+        }
+        if (levels == null) {
+            return this;
+        }
+        if (this.levels == null) {
+            this.levels = new HashMap<>();
+        }
+        ParticleSupplier[] key = levels;
+        return this.levels.computeIfAbsent(Arrays.asList(key),
+                k -> new CompositeSupplier(key));
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        int next = Integer.MAX_VALUE;
+        for (ParticleSupplier child : children) {
+            next = Math.min(next, child.nextActiveTick(tick));
+            if (next == tick) {
+                break;
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public int period() {
+        return period;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+/**
+ * A counter-based pseudo-random generator. Instead of keeping a sequence that
+ * is shared between all its callers, like {@link java.util.Random}, the
+ * generator is positioned on a key, which is made of a seed, a tick and an
+ * index, and then it produces a short stream of numbers that only depends on
+ * that key. This way, the same tick and index always produce the same values,
+ * regardless of the order or the thread where they are evaluated, so
+ * frames that use it are reproducible and can be evaluated in parallel.
+ *
+ * The numbers are produced by the SplitMix64 generator, and the normally
+ * distributed ones are produced with the ziggurat method, with 128 layers.
+ *
+ * Instances of this class are mutable and not thread safe, but they are cheap
+ * enough to create one per frame.
+ */
+public final class CounterRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    //Ziggurat tables, as described by Marsaglia and Tsang.
+    private static final int LAYERS = 128;
+    private static final double R = 3.442619855899;
+    private static final int[] KN = new int[LAYERS];
+    private static final float[] WN = new float[LAYERS];
+    private static final float[] FN = new float[LAYERS];
+
+    static {
+        final double m1 = 2147483648.0;
+        final double vn = 9.91256303526217e-3;
+        double dn = R;
+        double tn = dn;
+        double q = vn / Math.exp(-0.5 * dn * dn);
+
+        KN[0] = (int) ((dn / q) * m1);
+        KN[1] = 0;
+        WN[0] = (float) (q / m1);
+        WN[LAYERS - 1] = (float) (dn / m1);
+        FN[0] = 1.0f;
+        FN[LAYERS - 1] = (float) Math.exp(-0.5 * dn * dn);
+
+        for (int i = LAYERS - 2; i >= 1; i--) {
+            dn = Math.sqrt(-2 * Math.log(vn / dn + Math.exp(-0.5 * dn * dn)));
+            KN[i + 1] = (int) ((dn / tn) * m1);
+            tn = dn;
+            FN[i] = (float) Math.exp(-0.5 * dn * dn);
+            WN[i] = (float) (dn / m1);
+        }
+    }
+
+    /**
+     * The seed of this generator.
+     */
+    public final long seed;
+
+    private long state;
+
+    /**
+     * Creates a new generator with the specified seed, positioned at the
+     * tick 0 and the index 0.
+     * @param seed the seed.
+     */
+    public CounterRandom(long seed) {
+        this.seed = seed;
+        at(0, 0);
+    }
+
+    /**
+     * Mixes the bits of the specified value, with the finalizer of
+     * SplitMix64.
+     * @param z the value.
+     * @return the mixed value.
+     */
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Positions this generator at the specified tick and index. The numbers
+     * produced after this call only depend on the seed, the tick and the
+     * index.
+     * @param tick the tick.
+     * @param index the index, for instance, of the particle in the frame.
+     * @return this generator.
+     */
+    public CounterRandom at(int tick, int index) {
+        long key = ((long) tick << 32) | (index & 0xffffffffL);
+        state = mix64(seed ^ mix64(key + GOLDEN_GAMMA));
+        return this;
+    }
+
+    /**
+     * Returns the next pseudo-random long.
+     * @return the next long.
+     */
+    public long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+    /**
+     * Returns the next pseudo-random int.
+     * @return the next int.
+     */
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Returns the next pseudo-random int between 0 (inclusive) and the
+     * specified bound (exclusive). The result is computed with a
+     * multiplication instead of a division, so it has a negligible bias
+     * towards some values when the bound is not a power of two.
+     * @param bound the bound. It must be positive.
+     * @return the next int.
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("The bound must be positive");
+        return (int) (((nextInt() & 0xffffffffL) * bound) >>> 32);
+    }
+
+    /**
+     * Returns the next pseudo-random float, uniformly distributed between 0
+     * (inclusive) and 1 (exclusive).
+     * @return the next float.
+     */
+    public float nextFloat() {
+        return (nextInt() >>> 8) * 0x1.0p-24f;
+    }
+
+    /**
+     * Returns the next pseudo-random double, uniformly distributed between 0
+     * and 1, both exclusive.
+     */
+    private double nextOpenDouble() {
+        return ((nextLong() >>> 11) + 0.5) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns the next pseudo-random float, normally distributed with mean
+     * 0 and standard deviation 1.
+     * @return the next float.
+     */
+    public float nextGaussian() {
+        int hz = nextInt();
+        int iz = hz & (LAYERS - 1);
+        if (Math.abs(hz) < KN[iz]) {
+            return hz * WN[iz];
+        }
+
+        //The point is outside of the rectangle of its layer, which happens
+        //in less than 2% of the cases.
+        while (true) {
+            float x = hz * WN[iz];
+            if (iz == 0) {
+                double tx;
+                double ty;
+                do {
+                    tx = -Math.log(nextOpenDouble()) / R;
+                    ty = -Math.log(nextOpenDouble());
+                } while (ty + ty < tx * tx);
+                return (float) (hz > 0 ? R + tx : -R - tx);
+            }
+            if (FN[iz] + nextFloat() * (FN[iz - 1] - FN[iz])
+                    < Math.exp(-0.5 * x * x)) {
+                return x;
+            }
+
+            hz = nextInt();
+            iz = hz & (LAYERS - 1);
+            if (Math.abs(hz) < KN[iz]) {
+                return hz * WN[iz];
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ParticleSupplier} that removes, from each frame of another
+ * supplier, the particles that are closer than a given distance to a
+ * previous particle of the same frame with the same {@link Particle}. This is
+ * useful when several shapes are combined, or when a shape emits the same
+ * point more than once (for instance, the vertices shared by two edges of a
+ * polygon), since those particles cannot be told apart but are still sent to
+ * the players.
+ *
+ * The positions are quantized into a grid of cubes whose side is the merge
+ * distance, so each particle is only compared with the ones of its
+ * neighbouring cubes. Note that the distance is measured in the coordinates
+ * of the source supplier: transformations applied after this supplier that
+ * scale the frame scale the distance as well.
+ */
+public final class DeduplicatedSupplier implements ParticleSupplier {
+
+    /**
+     * The supplier whose frames are deduplicated.
+     */
+    public final ParticleSupplier source;
+
+    /**
+     * The distance under which two particles are merged.
+     */
+    public final float epsilon;
+
+    private Map<ParticleSupplier, DeduplicatedSupplier> levels;
+
+    //The frame and the hash table are reused between frames. They are kept
+    //per thread, since the same supplier may be evaluated by several
+    //threads at once.
+    private final ThreadLocal<Scratch> scratch =
+            ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Creates a new deduplicated supplier.
+     * @param source the supplier whose frames will be deduplicated.
+     * @param epsilon the distance, in Minecraft blocks, under which two
+     *                particles with the same {@link Particle} are merged.
+     */
+    public DeduplicatedSupplier(ParticleSupplier source, float epsilon) {
+        if (!(epsilon > 0))
+            throw new IllegalArgumentException("The distance must be " +
+                    "positive");
+
+        this.source = source;
+        this.epsilon = epsilon;
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        ParticleBuffer out = new ParticleBuffer();
+        supplyInto(tick, out);
+        return out.stream();
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        Scratch scratch = this.scratch.get();
+        ParticleBuffer frame = scratch.frame;
+        frame.clear();
+        source.supplyInto(tick, frame);
+        int n = frame.size();
+        if (n < 2) {
+            frame.forEach(sink);
+            return;
+        }
+
+        float inv = 1.0f / epsilon;
+        float epsilonSq = epsilon * epsilon;
+        int[] indices = frame.indices();
+        float[] xs = frame.xs();
+        float[] ys = frame.ys();
+        float[] zs = frame.zs();
+
+        //The accepted particles of each cell are chained through the next
+        //array. Different cells may share a bucket, which only means that
+        //some extra particles are compared.
+        int size = Integer.highestOneBit(n * 2 - 1) << 1;
+        if (scratch.buckets.length < size) {
+            scratch.buckets = new int[size];
+        }
+        if (scratch.next.length < n) {
+            scratch.next = new int[Math.max(n, scratch.next.length * 2)];
+        }
+        int[] buckets = scratch.buckets;
+        int[] next = scratch.next;
+        int mask = size - 1;
+        Arrays.fill(buckets, 0, size, -1);
+
+        for (int i = 0; i < n; i++) {
+            int particle = indices[i];
+            int cx = (int) Math.floor(xs[i] * inv);
+            int cy = (int) Math.floor(ys[i] * inv);
+            int cz = (int) Math.floor(zs[i] * inv);
+
+            boolean duplicated = false;
+            search:
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        int bucket = hash(particle, cx + dx, cy + dy,
+                                cz + dz) & mask;
+                        for (int j = buckets[bucket]; j >= 0; j = next[j]) {
+                            if (indices[j] != particle) {
+                                continue;
+                            }
+                            float ddx = xs[j] - xs[i];
+                            float ddy = ys[j] - ys[i];
+                            float ddz = zs[j] - zs[i];
+                            if (ddx * ddx + ddy * ddy + ddz * ddz
+                                    < epsilonSq) {
+                                duplicated = true;
+                                break search;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (!duplicated) {
+                int bucket = hash(particle, cx, cy, cz) & mask;
+                next[i] = buckets[bucket];
+                buckets[bucket] = i;
+                sink.accept(frame.particle(i), xs[i], ys[i], zs[i]);
+            }
+        }
+    }
+
+    private static int hash(int particle, int cx, int cy, int cz) {
+        int h = particle * 0x9E3779B1;
+        h = (h ^ cx) * 0x85EBCA6B;
+        h = (h ^ cy) * 0xC2B2AE35;
+        h = (h ^ cz) * 0x27D4EB2F;
+        return h ^ (h >>> 15);
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return source.isActive(tick);
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return source.nextActiveTick(tick);
+    }
+
+    @Override
+    public int period() {
+        return source.period();
+    }
+
+    @Override
+    public int levelsOfDetail() {
+        return source.levelsOfDetail();
+    }
+
+    @Override
+    public synchronized ParticleSupplier atDistance(double distance) {
+        ParticleSupplier level = source.atDistance(distance);
+        if (level == source) {
+            return this;
+        }
+        if (levels == null) {
+            levels = new IdentityHashMap<>();
+        }
+        return levels.computeIfAbsent(level,
+                l -> new DeduplicatedSupplier(l, epsilon));
+    }
+
+    private static final class Scratch {
+        final ParticleBuffer frame = new ParticleBuffer();
+        int[] buckets = new int[0];
+        int[] next = new int[0];
+    }
+}
@@ -18,12 +18,23 @@ package com.devcexx.libtrails;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Arrow;
 import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.logging.Level;
 
 /**
  * Represents a trail of particles that can be synchronized with the movement
@@ -68,8 +79,69 @@ public class EntityTrail {
      */
     public int ticksAlive;
 
+    /**
+     * Determines whether the frames of the trail are precomputed
+     * asynchronously. When enabled, the main thread only takes a snapshot
+     * of the location and velocity of the entity on each run, while the
+     * frame of the next run is computed in the {@link #executor}, and the
+     * frame computed in the previous run is spawned. Since the frame is
+     * computed one run in advance, the position of the entity is predicted
+     * from its velocity. The main thread never waits for the executor: if
+     * the frame of a run is not ready yet, it is computed synchronously
+     * instead. Only the supplier of the trail is evaluated in the executor;
+     * the transformers of the entity are always applied in the main thread.
+     * Since an abandoned frame may still be computed in the executor while
+     * the main thread computes the next one, the supplier of a pipelined
+     * trail must be safe to be evaluated from several threads at once.
+     *
+     * Trails with several levels of detail are always computed
+     * synchronously, since their frames depend on the viewers.
+     */
+    public boolean pipelined;
+
+    /**
+     * The executor where the frames are computed when the trail is
+     * {@link #pipelined}. If it is null, the frames are computed in the
+     * asynchronous scheduler of Bukkit.
+     */
+    public Executor executor;
+
+    /**
+     * The culling stage applied to each frame before it is spawned, or null
+     * to send all the particles to every player of the world, leaving the
+     * visibility check to the server.
+     */
+    public ViewerCulling culling;
+
+    /**
+     * The backend that receives the frames of the trail. By default, they
+     * are spawned through the Spigot API. If the trail is started with
+     * {@link #begin()}, the backend is flushed after every run of the trail,
+     * so backends that batch the frames of many trails, such as
+     * {@link PacketParticleBackend}, should be used with trails run by a
+     * {@link TrailScheduler}, which flushes each backend once per tick.
+     */
+    public ParticleBackend backend = SpigotParticleBackend.INSTANCE;
+
     private boolean began;
     private BukkitTask task;
+    private final TrailTicker ticker = new TrailTicker();
+    private TrailScheduler scheduler;
+    private final ParticleBuffer frameBuffer = new ParticleBuffer();
+
+    private ParticleBuffer[] buffers = new ParticleBuffer[] {
+            new ParticleBuffer(), new ParticleBuffer()
+    };
+    private int backBuffer;
+    private CompletableFuture<ParticleBuffer> pending;
+    private CompletableFuture<ParticleBuffer> abandoned;
+    private int pendingTick;
+
+    /**
+     * The position of this trail in the arrays of its scheduler, or -1 if it
+     * is not rendered by a {@link TrailScheduler}.
+     */
+    int slot = -1;
 
     /**
      * Determines whether the particle is being rendered or not.
@@ -136,22 +208,51 @@ public class EntityTrail {
     public void begin() {
         if (!began) {
             began = true;
-            task = Bukkit.getScheduler().runTaskTimer(plugin, new TrailTicker(),
+            task = Bukkit.getScheduler().runTaskTimer(plugin, ticker,
                     0, taskInterval);
         }
     }
 
+    /**
+     * Begins rendering the trail from the specified scheduler, instead of
+     * registering a task for it. Unlike {@link #begin()}, this method can be
+     * called from any thread: the trail is picked up by the scheduler at the
+     * start of its next tick, and nothing is done if the trail has already
+     * begun by then.
+     * @param scheduler the scheduler that will render the trail.
+     */
+    public void begin(TrailScheduler scheduler) {
+        scheduler.add(this);
+    }
+
     /**
      * Stops the trail rendering. If the {@link #begin()} method is called again
      * after invoking this method, the trail will be start rendering with the
      * value of ticksAlive that has when it stopped, unless the method
      * {@link #reset()} is called before.
+     *
+     * This method must be called from the main thread. Trails rendered by a
+     * {@link TrailScheduler} can be stopped from other threads through
+     * {@link TrailScheduler#remove(EntityTrail)}.
      */
     public void stop() {
         if (began) {
-            task.cancel();
-            task = null;
+            if (task != null) {
+                task.cancel();
+                task = null;
+            } else {
+                scheduler.detach(this);
+                scheduler = null;
+            }
             began = false;
+
+            //The worker may still be filling one of the current buffers, so
+            //they cannot be reused.
+            pending = null;
+            abandoned = null;
+            buffers = new ParticleBuffer[] {
+                    new ParticleBuffer(), new ParticleBuffer()
+            };
         }
     }
 
@@ -162,12 +263,61 @@ public class EntityTrail {
         ticksAlive = 0;
     }
 
+    /**
+     * Starts rendering the trail from the specified scheduler. Called by the
+     * scheduler, from the main thread.
+     * @return false if the trail had already begun.
+     */
+    boolean attach(TrailScheduler scheduler) {
+        if (began) {
+            return false;
+        }
+        began = true;
+        this.scheduler = scheduler;
+        return true;
+    }
+
+    /**
+     * Performs a single run of the trail, without flushing its backend.
+     * @return true if any frame has been handed to the backend.
+     */
+    boolean render() {
+        return ticker.render();
+    }
+
+    private Executor executor() {
+        Executor e = executor;
+        return e != null ? e
+                : r -> Bukkit.getScheduler().runTaskAsynchronously(plugin, r);
+    }
+
+    private Transform3 renderTransform(Vector3 location, Vector3 direction) {
+        Vector3 position = entityPositionTransformer.apply(location);
+        return LinearTransf.rotateRenderPlane(
+                entityDirectionTransformer.apply(direction))
+                .andThen(LinearTransf.translate(position));
+    }
+
     private class TrailTicker implements Runnable {
 
         @Override
         public void run() {
+            if (render()) {
+                backend.flush();
+            }
+        }
+
+        boolean render() {
             if (entity.isDead() || !entity.isValid()) {
                 stop();
+                return false;
+            } else if (pipelined && trail.levelsOfDetail() == 1) {
+                return runPipelined();
+            } else if (!trail.isActive(ticksAlive)) {
+                //Nothing will be emitted on this tick, so there's no need
+                //to fetch the location of the entity nor build the transform.
+                ticksAlive += taskInterval;
+                return false;
             } else {
                 Location eLoc = entity.getLocation();
                 Vector3 position = entityPositionTransformer.apply(Vector3
@@ -175,14 +325,160 @@ public class EntityTrail {
                 Vector3 direction = entityDirectionTransformer.apply(Vector3
                         .from(eLoc.getDirection()));
 
-                ParticleSupplier finalSupplier = trail.transformVectors(
-                        LinearTransf.rotateRenderPlane(direction)
-                                .andThen(LinearTransf.translate(position)));
+                Transform3 transform = LinearTransf.rotateRenderPlane(direction)
+                        .andThen(LinearTransf.translate(position));
 
-                finalSupplier.supply(ticksAlive).forEach((p) -> p.particle
-                        .spawn(eLoc.getWorld(), p.position, ticksAlive));
+                World world = eLoc.getWorld();
+                int tick = ticksAlive;
+                if (trail.levelsOfDetail() > 1) {
+                    //Each viewer may see a different level of detail, so the
+                    //viewers are grouped by level, and each level is only
+                    //evaluated once and sent to its whole group.
+                    Map<ParticleSupplier, List<Player>> groups =
+                            new IdentityHashMap<>();
+                    for (Player player : world.getPlayers()) {
+                        double distance = Vector3.from(player.getLocation())
+                                .distance(position);
+                        groups.computeIfAbsent(trail.atDistance(distance),
+                                l -> new ArrayList<>()).add(player);
+                    }
+
+                    for (Map.Entry<ParticleSupplier, List<Player>> group
+                            : groups.entrySet()) {
+                        frameBuffer.clear();
+                        group.getKey().transformAffine(transform)
+                                .supplyInto(tick, frameBuffer);
+                        List<Player> viewers = group.getValue();
+                        if (culling != null) {
+                            viewers = culling.viewers(viewers, frameBuffer);
+                        }
+                        if (!viewers.isEmpty()) {
+                            backend.send(viewers, frameBuffer, tick);
+                        }
+                    }
+                } else {
+                    frameBuffer.clear();
+                    trail.transformAffine(transform).supplyInto(tick,
+                            frameBuffer);
+                    dispatch(world, frameBuffer, tick);
+                }
                 ticksAlive += taskInterval;
+                return true;
+            }
+        }
+
+        private boolean runPipelined() {
+            int tick = ticksAlive;
+            int next = tick + taskInterval;
+            ParticleSupplier supplier = trail;
+
+            //The precomputed frame is only used if it is ready: waiting for
+            //it would stall the main thread if the executor is busy.
+            ParticleBuffer frame = null;
+            if (pending != null && pending.isDone()) {
+                frame = precomputed(pending);
+                if (pendingTick != tick) {
+                    frame = null;
+                }
+                pending = null;
+            } else if (pending != null && pendingTick <= tick) {
+                abandonPending();
+            }
+
+            boolean active = supplier.isActive(tick);
+            if (frame == null && !active && !supplier.isActive(next)) {
+                //Nothing will be emitted on this run nor on the next one, so
+                //there's no need to fetch the location of the entity.
+                ticksAlive = next;
+                return false;
+            }
+
+            Location eLoc = entity.getLocation();
+            World world = eLoc.getWorld();
+            Vector3 location = Vector3.from(eLoc);
+            Vector3 direction = Vector3.from(eLoc.getDirection());
+
+            if (frame == null && active) {
+                //There isn't a precomputed frame for this tick (e.g. it is
+                //the first run, or the worker is late), so it is computed
+                //synchronously.
+                frame = nextBuffer();
+                supplier.transformAffine(renderTransform(location, direction))
+                        .supplyInto(tick, frame);
             }
+
+            if (pending == null && supplier.isActive(next)
+                    && (abandoned == null || abandoned.isDone())) {
+                abandoned = null;
+                ParticleBuffer target = nextBuffer();
+                Vector3 predicted = location.add(Vector3
+                        .from(entity.getVelocity()).mul(taskInterval));
+
+                //The transformers of the entity are user code, so they are
+                //applied here, and the worker only receives the result.
+                Transform3 transform = renderTransform(predicted, direction);
+                pending = CompletableFuture.supplyAsync(() -> {
+                    supplier.transformAffine(transform).supplyInto(next,
+                            target);
+                    return target;
+                }, executor());
+                pendingTick = next;
+            }
+
+            //The worker fills the other buffer while this one is spawned.
+            if (frame != null) {
+                dispatch(world, frame, tick);
+            }
+            ticksAlive = next;
+            return frame != null;
+        }
+
+        /**
+         * Returns the frame computed by the specified finished future, or null
+         * if the computation failed.
+         */
+        private ParticleBuffer precomputed(
+                CompletableFuture<ParticleBuffer> future) {
+            try {
+                return future.getNow(null);
+            } catch (CompletionException | CancellationException ex) {
+                plugin.getLogger().log(Level.WARNING, "Failed to precompute "
+                        + "a frame of a trail", ex.getCause());
+                return null;
+            }
+        }
+
+        /**
+         * Discards the pending frame, which is still being computed. The
+         * worker keeps writing into its buffer, so both buffers are replaced,
+         * and no other frame is submitted until the worker finishes.
+         */
+        private void abandonPending() {
+            abandoned = pending;
+            pending = null;
+            buffers = new ParticleBuffer[] {
+                    new ParticleBuffer(), new ParticleBuffer()
+            };
+        }
+
+        /**
+         * Spawns the specified frame, only for its candidate viewers if
+         * there is a culling stage.
+         */
+        private void dispatch(World world, ParticleBuffer frame, int tick) {
+            if (culling == null) {
+                backend.broadcast(world, frame, tick);
+                return;
+            }
+
+            backend.send(culling.viewers(world, frame), frame, tick);
+        }
+
+        private ParticleBuffer nextBuffer() {
+            ParticleBuffer buffer = buffers[backBuffer];
+            backBuffer ^= 1;
+            buffer.clear();
+            return buffer;
         }
     }
 }
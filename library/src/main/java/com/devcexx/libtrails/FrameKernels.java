@@ -0,0 +1,70 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+/**
+ * Provides bulk transformations over whole frames of points, stored as
+ * separate arrays of components, as in {@link ParticleBuffer}. All the
+ * methods transform the points of the arrays in place.
+ *
+ * The library is packaged as a multi-release jar: this implementation is the
+ * portable scalar one, while on Java 17 or newer a version backed by the
+ * incubating Vector API ({@code jdk.incubator.vector}) is used instead, as long
+ * as that module is added to the JVM with
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+public final class FrameKernels {
+
+    private FrameKernels() {
+    }
+
+    /**
+     * Determines whether the kernels are SIMD accelerated in the current JVM.
+     * @return true if the kernels are backed by the Vector API. false
+     * otherwise.
+     */
+    public static boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * Applies an affine transformation to the specified points.
+     * @param t the transformation.
+     * @param xs the x components of the points.
+     * @param ys the y components of the points.
+     * @param zs the z components of the points.
+     * @param n the number of points to transform.
+     */
+    public static void affine(Transform3 t, float[] xs, float[] ys, float[] zs,
+                              int n) {
+        affine(t, xs, ys, zs, 0, n);
+    }
+
+    /**
+     * Applies an affine transformation to the points of the specified range.
+     * @param t the transformation.
+     * @param xs the x components of the points.
+     * @param ys the y components of the points.
+     * @param zs the z components of the points.
+     * @param from the index of the first point to transform, inclusive.
+     * @param to the index of the last point to transform, exclusive.
+     */
+    public static void affine(Transform3 t, float[] xs, float[] ys, float[] zs,
+                              int from, int to) {
+        ScalarFrameKernels.affine(t, xs, ys, zs, from, to);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+/**
+ * Transforms, in place, a range of the particles of a frame stored in a
+ * {@link ParticleBuffer}. Unlike the functions passed to
+ * {@link ParticleSupplier#transformVectors(java.util.function.Function)} or
+ * {@link ParticleSupplier#transformParticles(java.util.function.BiFunction)},
+ * a frame transformer works directly over the components stored in the
+ * buffer, so no objects need to be created for each particle.
+ *
+ * @see ParticleSupplier#transformFrame(FrameTransformer)
+ */
+@FunctionalInterface
+public interface FrameTransformer {
+
+    /**
+     * Transforms the particles of the specified range of the frame. The
+     * positions can be read and written through the backing arrays of the
+     * buffer, and the particles can be replaced through
+     * {@link ParticleBuffer#set(int, Particle, float, float, float)}. The
+     * particles outside the range must not be modified.
+     * @param frame the buffer that holds the frame.
+     * @param from the index of the first particle of the range, inclusive.
+     * @param to the index of the last particle of the range, exclusive.
+     * @param tick the tick the frame belongs to.
+     */
+    void transform(ParticleBuffer frame, int from, int to, int tick);
+}
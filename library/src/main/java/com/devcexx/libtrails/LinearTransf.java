@@ -16,34 +16,36 @@
 
 package com.devcexx.libtrails;
 
-import java.util.function.Function;
-
+/**
+ * Provides factory methods for the most common affine transformations. All of
+ * them return instances of {@link Transform3}, so they can be composed through
+ * {@link Transform3#andThen(Transform3)} into a single matrix.
+ */
 public abstract class LinearTransf {
-    public static Function<Vector3, Vector3> translate(float xoffset,
-                                                       float yoffset,
-                                                       float zoffset) {
-        return v -> v.add(xoffset, yoffset, zoffset);
+    public static Transform3 translate(float xoffset, float yoffset,
+                                       float zoffset) {
+        return Transform3.translation(xoffset, yoffset, zoffset);
     }
 
-    public static Function<Vector3, Vector3> translate(Vector3 vec) {
-        return v -> v.add(vec);
+    public static Transform3 translate(Vector3 vec) {
+        return Transform3.translation(vec);
     }
 
-    public static Function<Vector3, Vector3> scale(float scaleFactor) {
-        return v -> v.scale(scaleFactor);
+    public static Transform3 scale(float scaleFactor) {
+        return Transform3.scaling(scaleFactor);
     }
 
-    public static Function<Vector3, Vector3> rotate(Vector3 axis, float angle) {
-        return v -> v.rotate(axis, angle);
+    public static Transform3 rotate(Vector3 axis, float angle) {
+        return Transform3.rotation(axis, angle);
     }
 
-    public static Function<Vector3, Vector3> rotateRenderPlane(Vector3 normal) {
+    public static Transform3 rotateRenderPlane(Vector3 normal) {
         //Gets the rotation axis of the transformation.
         Vector3 axis = Vector3.AXIS_Y.cross(normal).normalize();
         if (axis.equals(Vector3.ORIGIN)) {
             if (Vector3.AXIS_Y.dot(normal) > 0) {
                 //Axis Y has the same direction as normal. Nothing to do
-                return v -> v;
+                return Transform3.IDENTITY;
             } else {
                 //Axis Y is opposite to normal.
                 axis = Vector3.AXIS_Z;
@@ -68,7 +70,7 @@ public abstract class LinearTransf {
         //Second rotation: rotates the point around the axis of the
         //rotation between the Y axis and the new normal axis, to place
         //the drawing inside the plane.
-        Vector3 faxis = axis;
-        return v -> v.rotateY(yAngle + (float) Math.PI).rotate(faxis, angle);
+        return Transform3.rotationY(yAngle + (float) Math.PI)
+                .andThen(Transform3.rotation(axis, angle));
     }
 }
@@ -0,0 +1,176 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.stream.Stream;
+
+/**
+ * A {@link ParticleSupplier} that carries several levels of detail of the same
+ * effect, and picks one of them depending on the distance between the viewer
+ * and the origin of the effect. The first level is the most detailed one, and
+ * it is the one used when the distance of the viewer is not known, for
+ * instance, when {@link #supply(int)} is called directly.
+ *
+ * All the levels are expected to be active on the same ticks and to have the
+ * same period, since this supplier reports the ones of its first level.
+ */
+public class LodSupplier implements ParticleSupplier {
+
+    private final ParticleSupplier[] levels;
+    private final double[] distances;
+
+    /**
+     * Creates a new supplier with the specified levels of detail.
+     * @param levels the levels of detail, from the most detailed to the
+     *               least detailed one.
+     * @param distances the distances, in Minecraft blocks, where each level
+     *                  starts being used. It must contain one distance less
+     *                  than the number of levels, in ascending order: the
+     *                  level {@code i + 1} is used by viewers at a distance
+     *                  greater or equal to {@code distances[i]}.
+     */
+    public LodSupplier(ParticleSupplier[] levels, double[] distances) {
+        if (levels.length == 0)
+            throw new IllegalArgumentException("At least one level is " +
+                    "required");
+        if (distances.length != levels.length - 1)
+            throw new IllegalArgumentException("There must be one distance " +
+                    "less than levels");
+        for (int i = 1; i < distances.length; i++) {
+            if (distances[i] < distances[i - 1])
+                throw new IllegalArgumentException("The distances must be " +
+                        "in ascending order");
+        }
+
+        this.levels = levels.clone();
+        this.distances = distances.clone();
+    }
+
+    /**
+     * Creates a supplier whose levels of detail are built by decimating the
+     * specified supplier: the level {@code i} only emits one of each
+     * {@code 2^i} particles of each frame.
+     * @param source the most detailed level.
+     * @param distances the distances where each level starts being used. The
+     *                  number of levels will be one more than the number of
+     *                  distances.
+     * @return a new supplier with the decimated levels of detail.
+     */
+    public static LodSupplier decimated(ParticleSupplier source,
+                                        double... distances) {
+        ParticleSupplier[] levels = new ParticleSupplier[distances.length + 1];
+        levels[0] = source;
+        for (int i = 1; i < levels.length; i++) {
+            levels[i] = new DecimatedSupplier(source, 1 << i);
+        }
+        return new LodSupplier(levels, distances);
+    }
+
+    /**
+     * Returns the number of levels of detail of this supplier.
+     * @return the number of levels.
+     */
+    @Override
+    public int levelsOfDetail() {
+        return levels.length;
+    }
+
+    /**
+     * Returns the level of detail that should be used by a viewer placed at
+     * the specified distance of the origin of the effect.
+     * @param distance the distance, in Minecraft blocks.
+     * @return the level of detail for that distance.
+     */
+    @Override
+    public ParticleSupplier atDistance(double distance) {
+        int level = 0;
+        while (level < distances.length && distance >= distances[level]) {
+            level++;
+        }
+        return levels[level];
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        return levels[0].supply(tick);
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        levels[0].supplyInto(tick, sink);
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return levels[0].isActive(tick);
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return levels[0].nextActiveTick(tick);
+    }
+
+    @Override
+    public int period() {
+        return levels[0].period();
+    }
+
+    /**
+     * A supplier that only emits one of each n particles of each frame of
+     * another supplier.
+     */
+    private static class DecimatedSupplier implements ParticleSupplier {
+        private final ParticleSupplier source;
+        private final int n;
+
+        DecimatedSupplier(ParticleSupplier source, int n) {
+            this.source = source;
+            this.n = n;
+        }
+
+        @Override
+        public Stream<SuppliedParticle> supply(int tick) {
+            int[] index = new int[1];
+            return source.supply(tick).filter(p -> index[0]++ % n == 0);
+        }
+
+        @Override
+        public void supplyInto(int tick, ParticleSink sink) {
+            int[] index = new int[1];
+            source.supplyInto(tick, (p, x, y, z) -> {
+                if (index[0]++ % n == 0) {
+                    sink.accept(p, x, y, z);
+                }
+            });
+        }
+
+        @Override
+        public boolean isActive(int tick) {
+            return source.isActive(tick);
+        }
+
+        @Override
+        public int nextActiveTick(int tick) {
+            return source.nextActiveTick(tick);
+        }
+
+        @Override
+        public int period() {
+            return source.period();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.nio.MappedByteBuffer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ParticleSupplier} that serves the frames of a baked trail file,
+ * reading them directly from the file mapped into memory, so they don't use
+ * any heap space. Instances of this class are created by
+ * {@link BakedTrailFile}.
+ */
+public final class MappedBakedSupplier implements ParticleSupplier {
+
+    /**
+     * The number of frames of the baked period.
+     */
+    public final int period;
+
+    private final MappedByteBuffer buffer;
+    private final Particle[] palette;
+    private final int[] frameStart;
+
+    MappedBakedSupplier(MappedByteBuffer buffer, int period,
+                        Particle[] palette, int[] frameStart) {
+        this.buffer = buffer;
+        this.period = period;
+        this.palette = palette;
+        this.frameStart = frameStart;
+    }
+
+    /**
+     * Returns the total number of particles stored in all the frames.
+     * @return the total number of baked particles.
+     */
+    public int size() {
+        return frameStart[period];
+    }
+
+    /**
+     * Returns the number of particles of the frame served at the specified
+     * tick.
+     * @param tick the tick.
+     * @return the number of particles of the frame.
+     */
+    public int frameSize(int tick) {
+        int frame = Math.floorMod(tick, period);
+        return frameStart[frame + 1] - frameStart[frame];
+    }
+
+    private static int record(int i) {
+        return BakedTrailFile.HEADER_SIZE + i * BakedTrailFile.RECORD_SIZE;
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        int frame = Math.floorMod(tick, period);
+        return IntStream.range(frameStart[frame], frameStart[frame + 1])
+                .mapToObj(i -> {
+                    int p = record(i);
+                    return new SuppliedParticle(palette[buffer.getInt(p)],
+                            new Vector3(buffer.getFloat(p + 4),
+                                    buffer.getFloat(p + 8),
+                                    buffer.getFloat(p + 12)));
+                });
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        int frame = Math.floorMod(tick, period);
+        for (int i = frameStart[frame]; i < frameStart[frame + 1]; i++) {
+            int p = record(i);
+            sink.accept(palette[buffer.getInt(p)], buffer.getFloat(p + 4),
+                    buffer.getFloat(p + 8), buffer.getFloat(p + 12));
+        }
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return frameSize(tick) > 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        for (int i = 0; i < period; i++) {
+            if (frameSize(tick + i) > 0) {
+                return tick + i;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int period() {
+        return period;
+    }
+
+    @Override
+    public ParticleSupplier bake() {
+        return this;
+    }
+}
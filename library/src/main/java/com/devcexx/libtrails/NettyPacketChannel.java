@@ -0,0 +1,182 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link PacketChannel} that writes the packets into the Netty channel of a
+ * player. Both the server internals and Netty are accessed through
+ * reflection, so the class doesn't depend on a specific version of the
+ * server: the fields are looked up by the name of their types, instead of
+ * their obfuscated names.
+ *
+ * Each packet is wrapped into a buffer that shares the array of the packet.
+ * The buffer is written at the tail of the pipeline of the channel, like any
+ * other packet, but the packet encoder of the server only encodes packet
+ * objects, so it passes the buffer through untouched. After that, the buffer
+ * is compressed, prefixed with its length and encrypted by the rest of the
+ * pipeline, as the encoded packets of the server are. The writes are
+ * queued until the channel is flushed, and then they are written at once in
+ * the event loop of the channel.
+ */
+final class NettyPacketChannel implements PacketChannel {
+
+    private final Object channel;
+    private final Method write;
+    private final Method flush;
+    private final Method wrap;
+    private final Executor eventLoop;
+    private List<Object> pending = new ArrayList<>();
+
+    private NettyPacketChannel(Object channel, Class<?> channelType)
+            throws ReflectiveOperationException {
+        this.channel = channel;
+        this.write = channelType.getMethod("write", Object.class);
+        this.flush = channelType.getMethod("flush");
+        this.eventLoop = (Executor) channelType.getMethod("eventLoop")
+                .invoke(channel);
+        this.wrap = wrapMethod(channelType);
+    }
+
+    /**
+     * Returns the method that wraps an array into a Netty buffer.
+     */
+    private static Method wrapMethod(Class<?> channelType)
+            throws ReflectiveOperationException {
+        //Netty may be relocated by the server, so Unpooled is loaded from
+        //the same package than the channel.
+        String netty = channelType.getName();
+        netty = netty.substring(0, netty.length()
+                - "channel.Channel".length());
+        return Class.forName(netty + "buffer.Unpooled", true,
+                channelType.getClassLoader()).getMethod("wrappedBuffer",
+                byte[].class, int.class, int.class);
+    }
+
+    /**
+     * Checks whether the channels of the players of the specified class can
+     * be obtained, by looking up the types of the fields that lead from the
+     * player to its Netty channel, without needing any player.
+     */
+    static boolean isSupported(Class<?> playerType) {
+        try {
+            Class<?> handle = playerType.getMethod("getHandle")
+                    .getReturnType();
+            Field connection = field(handle, "PlayerConnection");
+            Field manager = connection == null ? null
+                    : field(connection.getType(), "NetworkManager");
+            Field channel = manager == null ? null
+                    : field(manager.getType(), "Channel");
+            if (channel == null) {
+                return false;
+            }
+
+            Class<?> channelType = channel.getType();
+            channelType.getMethod("write", Object.class);
+            channelType.getMethod("flush");
+            channelType.getMethod("eventLoop");
+            wrapMethod(channelType);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException
+                | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the channel of the specified player, or null if the player
+     * doesn't have a connection, e.g. if it is a fake player.
+     */
+    static PacketChannel of(Player player) {
+        try {
+            Object handle = player.getClass().getMethod("getHandle")
+                    .invoke(player);
+            Field connection = field(handle.getClass(), "PlayerConnection");
+            Object conn = connection == null ? null : connection.get(handle);
+            if (conn == null) {
+                return null;
+            }
+
+            Field manager = field(conn.getClass(), "NetworkManager");
+            Object nm = manager == null ? null : manager.get(conn);
+            if (nm == null) {
+                return null;
+            }
+
+            Field channel = field(nm.getClass(), "Channel");
+            Object ch = channel == null ? null : channel.get(nm);
+            return ch == null ? null : new NettyPacketChannel(ch,
+                    channel.getType());
+        } catch (ReflectiveOperationException ex) {
+            throw new RuntimeException("Reflection error!", ex);
+        }
+    }
+
+    /**
+     * Finds the first instance field of the specified class, or its
+     * superclasses, whose type has the specified simple name.
+     */
+    private static Field field(Class<?> from, String typeName) {
+        for (Class<?> c = from; c != null; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers())
+                        && f.getType().getSimpleName().equals(typeName)) {
+                    f.setAccessible(true);
+                    return f;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        try {
+            pending.add(wrap.invoke(null, data, offset, length));
+        } catch (ReflectiveOperationException ex) {
+            throw new RuntimeException("Reflection error!", ex);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Object> batch = pending;
+        pending = new ArrayList<>(batch.size());
+        eventLoop.execute(() -> {
+            try {
+                for (Object msg : batch) {
+                    write.invoke(channel, msg);
+                }
+                flush.invoke(channel);
+            } catch (ReflectiveOperationException ex) {
+                throw new RuntimeException("Reflection error!", ex);
+            }
+        });
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+/**
+ * The connection of a player, as seen by {@link PacketParticleBackend}. A
+ * channel receives already encoded packets, each one being the id of the
+ * packet, as a VarInt, followed by its fields, without the length prefix nor
+ * compression, which are added by the channel, since they depend on the
+ * connection.
+ *
+ * The same bytes are written to the channels of every viewer of a frame, so
+ * channels must not modify them. They may keep a reference to them until
+ * they are written, instead of copying them.
+ *
+ * @see RecordingPacketChannel
+ */
+public interface PacketChannel {
+
+    /**
+     * Queues a packet to be sent.
+     * @param data the array that holds the packet. It is shared, so it must
+     *             not be modified.
+     * @param offset the position of the first byte of the packet.
+     * @param length the length of the packet, in bytes.
+     */
+    void write(byte[] data, int offset, int length);
+
+    /**
+     * Sends the packets queued since the last flush.
+     */
+    void flush();
+}
@@ -0,0 +1,423 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Effect;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+/**
+ * A {@link ParticleBackend} that encodes the particle packets itself, instead
+ * of letting the server build them for each player. When a frame is sent to
+ * several players, each packet is encoded once into a shared array, and the
+ * same bytes are written to the {@link PacketChannel} of every player. The
+ * channels are only flushed when the backend is flushed, so the packets of
+ * all the trails of a tick are sent together when the trails are run by a
+ * {@link TrailScheduler}.
+ *
+ * The packets are equivalent to the ones sent by the {@code playEffect}
+ * method of the Spigot API, including the check of the visibility radius of
+ * each particle, which is done against the location of each player. The
+ * particles whose effect is not a particle, and the players without a
+ * channel, are sent through {@link SpigotParticleBackend}.
+ *
+ * The channels of the players are resolved through the function passed to the
+ * constructor, so the backend can be used with stand-in channels, such as
+ * {@link RecordingPacketChannel}. {@link #forServer()} resolves them through
+ * reflection, for the version of the running server. If the channel of a
+ * player cannot be resolved, the player is sent the particles through
+ * {@link SpigotParticleBackend} from then on. This class is not thread safe,
+ * and it is intended to be used from the main thread.
+ */
+public final class PacketParticleBackend implements ParticleBackend {
+
+    /**
+     * The names of the particles of the protocol, without underscores,
+     * indexed by their id. The ids are the same from Minecraft 1.8 to 1.12,
+     * newer particles are appended.
+     */
+    private static final String[] PARTICLE_NAMES = {
+            "explode", "largeexplode", "hugeexplosion", "fireworksSpark",
+            "bubble", "splash", "wake", "suspended", "depthsuspend", "crit",
+            "magicCrit", "smoke", "largesmoke", "spell", "instantSpell",
+            "mobSpell", "mobSpellAmbient", "witchMagic", "dripWater",
+            "dripLava", "angryVillager", "happyVillager", "townaura", "note",
+            "portal", "enchantmenttable", "flame", "lava", "footstep",
+            "cloud", "reddust", "snowballpoof", "snowshovel", "slime",
+            "heart", "barrier", "iconcrack", "blockcrack", "blockdust",
+            "droplet", "take", "mobappearance", "dragonbreath", "endRod",
+            "damageIndicator", "sweepAttack", "fallingdust", "totem", "spit"
+    };
+
+    private static final Map<Effect, Integer> PARTICLE_IDS =
+            Collections.synchronizedMap(new EnumMap<>(Effect.class));
+
+    /**
+     * The id of the particle packet in the protocol of the server.
+     */
+    public final int packetId;
+
+    private final Function<Player, PacketChannel> channels;
+    private final Map<Player, PacketChannel> resolved = new WeakHashMap<>();
+    private final Set<PacketChannel> written = new LinkedHashSet<>();
+
+    /**
+     * Creates a new backend.
+     * @param packetId the id of the particle packet in the protocol of the
+     *                 server, as returned by {@link #packetId(String)}.
+     * @param channels the function that returns the channel of each player,
+     *                 or null if a player doesn't have one. It is called once
+     *                 per player; if it throws an exception, the player is
+     *                 treated as if it didn't have a channel.
+     */
+    public PacketParticleBackend(int packetId,
+                                 Function<Player, PacketChannel> channels) {
+        if (packetId < 0)
+            throw new IllegalArgumentException("The packet id cannot be " +
+                    "negative");
+
+        this.packetId = packetId;
+        this.channels = channels;
+    }
+
+    /**
+     * Returns a backend that writes the packets directly into the
+     * connections of the players of the running server, or
+     * {@link SpigotParticleBackend#INSTANCE} if the version of the server is
+     * not supported, or its connections cannot be reached through
+     * reflection.
+     * @return the backend.
+     */
+    public static ParticleBackend forServer() {
+        Class<?> server = Bukkit.getServer().getClass();
+        String pkg = server.getPackage().getName();
+        int id = packetId(pkg.substring(pkg.lastIndexOf('.') + 1));
+        if (id < 0) {
+            return SpigotParticleBackend.INSTANCE;
+        }
+
+        try {
+            Class<?> player = Class.forName(pkg + ".entity.CraftPlayer",
+                    false, server.getClassLoader());
+            if (!NettyPacketChannel.isSupported(player)) {
+                return SpigotParticleBackend.INSTANCE;
+            }
+        } catch (ClassNotFoundException ex) {
+            return SpigotParticleBackend.INSTANCE;
+        }
+        return new PacketParticleBackend(id, NettyPacketChannel::of);
+    }
+
+    /**
+     * Returns the id of the particle packet for the specified version of the
+     * server internals, such as {@code v1_11_R1}.
+     * @param version the version.
+     * @return the id of the packet, or -1 if the version is not supported.
+     */
+    public static int packetId(String version) {
+        String[] parts = version.split("_");
+        if (parts.length < 2 || !parts[0].equals("v1")) {
+            return -1;
+        }
+
+        int minor;
+        try {
+            minor = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+        if (minor == 8) {
+            return 0x2A;
+        }
+        return minor >= 9 && minor <= 12 ? 0x22 : -1;
+    }
+
+    /**
+     * Returns the id, in the protocol, of the particle of the specified
+     * effect.
+     * @param effect the effect.
+     * @return the id of the particle, or -1 if the effect is not a particle.
+     */
+    public static int particleId(Effect effect) {
+        Integer id = PARTICLE_IDS.get(effect);
+        if (id == null) {
+            id = -1;
+            String name = effect.getName();
+            for (int i = 0; name != null && i < PARTICLE_NAMES.length; i++) {
+                if (PARTICLE_NAMES[i].equals(name)) {
+                    id = i;
+                    break;
+                }
+            }
+            PARTICLE_IDS.put(effect, id);
+        }
+        return id;
+    }
+
+    @Override
+    public void send(Player viewer, ParticleBuffer frame, int tick) {
+        send(Collections.singletonList(viewer), frame, tick);
+    }
+
+    @Override
+    public void send(Collection<? extends Player> viewers,
+                     ParticleBuffer frame, int tick) {
+        if (frame.isEmpty() || viewers.isEmpty()) {
+            return;
+        }
+
+        Encoding encoding = encode(frame, tick);
+        for (Player viewer : viewers) {
+            write(viewer, frame, encoding, tick);
+        }
+    }
+
+    @Override
+    public void broadcast(World world, ParticleBuffer frame, int tick) {
+        send(world.getPlayers(), frame, tick);
+    }
+
+    @Override
+    public void flush() {
+        for (PacketChannel channel : written) {
+            channel.flush();
+        }
+        written.clear();
+    }
+
+    private PacketChannel channel(Player viewer) {
+        PacketChannel channel = resolved.get(viewer);
+        if (channel == null && !resolved.containsKey(viewer)) {
+            try {
+                channel = channels.apply(viewer);
+            } catch (RuntimeException ex) {
+                //The player is sent through the Spigot backend from now on.
+                channel = null;
+            }
+            resolved.put(viewer, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Writes the packets of the particles of the frame that are visible from
+     * the location of the specified player into its channel.
+     */
+    private void write(Player viewer, ParticleBuffer frame, Encoding encoding,
+                       int tick) {
+        PacketChannel channel = channel(viewer);
+        if (channel == null) {
+            SpigotParticleBackend.INSTANCE.send(viewer, frame, tick);
+            return;
+        }
+
+        Location loc = viewer.getLocation();
+        double px = loc.getX();
+        double py = loc.getY();
+        double pz = loc.getZ();
+
+        int[] indices = frame.indices();
+        float[] xs = frame.xs();
+        float[] ys = frame.ys();
+        float[] zs = frame.zs();
+        int[] offsets = encoding.offsets;
+        boolean wrote = false;
+        Location fallback = null;
+        for (int i = 0; i < frame.size(); i++) {
+            double dx = xs[i] - px;
+            double dy = ys[i] - py;
+            double dz = zs[i] - pz;
+
+            //The same check than the server, which truncates the distance.
+            if ((int) (dx * dx + dy * dy + dz * dz)
+                    > encoding.radii[indices[i]]) {
+                continue;
+            }
+
+            int from = offsets[i];
+            int length = offsets[i + 1] - from;
+            if (length > 0) {
+                channel.write(encoding.data, from, length);
+                wrote = true;
+            } else {
+                if (fallback == null) {
+                    fallback = new Location(viewer.getWorld(), 0, 0, 0);
+                }
+                fallback.setX(xs[i]);
+                fallback.setY(ys[i]);
+                fallback.setZ(zs[i]);
+                frame.particle(i).spawn(viewer, fallback, tick);
+            }
+        }
+
+        if (wrote) {
+            written.add(channel);
+        }
+    }
+
+    /**
+     * Encodes the packets of all the particles of the frame into a single
+     * array. The fields of each particle of the palette are evaluated and
+     * encoded once into a template, which is then copied for each particle,
+     * replacing only its position.
+     */
+    private Encoding encode(ParticleBuffer frame, int tick) {
+        int palette = frame.paletteSize();
+        byte[][] templates = new byte[palette][];
+        int[] radii = new int[palette];
+        for (int i = 0; i < palette; i++) {
+            Particle p = frame.paletteEntry(i);
+            radii[i] = p.getRadius() * p.getRadius();
+            templates[i] = template(p, tick);
+        }
+
+        int size = frame.size();
+        int[] indices = frame.indices();
+        int[] offsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            offsets[i + 1] = offsets[i] + templates[indices[i]].length;
+        }
+
+        //The array is not reused, since the channels may keep it until the
+        //packets are written.
+        byte[] data = new byte[offsets[size]];
+        float[] xs = frame.xs();
+        float[] ys = frame.ys();
+        float[] zs = frame.zs();
+        for (int i = 0; i < size; i++) {
+            byte[] template = templates[indices[i]];
+            if (template.length == 0) {
+                continue;
+            }
+
+            int pos = offsets[i];
+            System.arraycopy(template, 0, data, pos, template.length);
+            pos += positionOffset();
+            pos = putFloat(data, pos, xs[i]);
+            pos = putFloat(data, pos, ys[i]);
+            putFloat(data, pos, zs[i]);
+        }
+        return new Encoding(data, offsets, radii);
+    }
+
+    /**
+     * Returns the offset of the position of the particle into its packet.
+     */
+    private int positionOffset() {
+        return varIntSize(packetId) + 5;
+    }
+
+    /**
+     * Encodes the packet of the specified particle, with its position set to
+     * zero, or returns an empty array if the effect is not a particle.
+     */
+    private byte[] template(Particle p, int tick) {
+        int particle = particleId(p.getEffect());
+        if (particle < 0) {
+            return new byte[0];
+        }
+
+        int[] extra;
+        String name = PARTICLE_NAMES[particle];
+        if (name.equals("iconcrack")) {
+            extra = new int[] { p.getId(), p.getData() };
+        } else if (name.equals("blockcrack") || name.equals("blockdust")
+                || name.equals("fallingdust")) {
+            extra = new int[] { (p.getData() << 12) | (p.getId() & 0xFFF) };
+        } else {
+            extra = new int[0];
+        }
+
+        int length = positionOffset() + 32;
+        for (int e : extra) {
+            length += varIntSize(e);
+        }
+
+        byte[] b = new byte[length];
+        int pos = putVarInt(b, 0, packetId);
+        pos = putInt(b, pos, particle);
+        b[pos++] = 1; //Long distance, as the server does.
+        pos += 12;
+        pos = putFloat(b, pos, p.getOffsetX().apply(tick));
+        pos = putFloat(b, pos, p.getOffsetY().apply(tick));
+        pos = putFloat(b, pos, p.getOffsetZ().apply(tick));
+        pos = putFloat(b, pos, p.getSpeed().apply(tick));
+        pos = putInt(b, pos, p.getCount().apply(tick));
+        for (int e : extra) {
+            pos = putVarInt(b, pos, e);
+        }
+        return b;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int putVarInt(byte[] b, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            b[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        b[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int putInt(byte[] b, int pos, int value) {
+        b[pos] = (byte) (value >>> 24);
+        b[pos + 1] = (byte) (value >>> 16);
+        b[pos + 2] = (byte) (value >>> 8);
+        b[pos + 3] = (byte) value;
+        return pos + 4;
+    }
+
+    private static int putFloat(byte[] b, int pos, float value) {
+        return putInt(b, pos, Float.floatToIntBits(value));
+    }
+
+    /**
+     * The packets of a frame. The packet of the {@code i}-th particle is
+     * stored between {@code offsets[i]} and {@code offsets[i + 1]}, and it is
+     * empty if the particle must be spawned through the API.
+     */
+    private static final class Encoding {
+        final byte[] data;
+        final int[] offsets;
+        final int[] radii;
+
+        Encoding(byte[] data, int[] offsets, int[] radii) {
+            this.data = data;
+            this.offsets = offsets;
+            this.radii = radii;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ParticleSupplier} that evaluates the transformation chain of a
+ * {@link TransformedSupplier} in parallel, over a bounded
+ * {@link ForkJoinPool}. The frame of the untransformed source is still
+ * generated in the calling thread; it is then split in chunks which are
+ * transformed by the threads of the pool, and the result is finally pushed
+ * into the sink from the calling thread, in the original order. This way,
+ * the sink doesn't need to be thread safe, and particles can be spawned from
+ * it as usual.
+ *
+ * Frames smaller than the configured threshold, and suppliers that are not
+ * transformed, are evaluated sequentially, since splitting them would cost
+ * more than it saves. Chains with a {@link FrameTransformer} are evaluated
+ * sequentially as well, since it must be applied over whole frames.
+ *
+ * The functions of the transformation chain (for instance, the ones passed to
+ * {@link ParticleSupplier#transformVectors(java.util.function.Function)} or
+ * {@link ParticleSupplier#transformParticles(java.util.function.BiFunction)})
+ * are invoked concurrently, so they must be thread safe. The source itself is
+ * only evaluated from the calling thread, so it doesn't need to be thread
+ * safe, unless the same instance is also rendered by other trails.
+ */
+public final class ParallelSupplier implements ParticleSupplier {
+
+    /**
+     * The default minimum number of particles a frame must have to be
+     * evaluated in parallel.
+     */
+    public static final int DEFAULT_THRESHOLD = 4096;
+
+    /**
+     * The supplier evaluated by this one.
+     */
+    public final ParticleSupplier source;
+
+    /**
+     * The pool where the chunks of each frame are evaluated.
+     */
+    public final ForkJoinPool pool;
+
+    /**
+     * The minimum number of particles a frame must have to be evaluated in
+     * parallel.
+     */
+    public final int threshold;
+
+    private Map<ParticleSupplier, ParallelSupplier> levels;
+
+    /**
+     * Creates a new parallel supplier.
+     * @param source the supplier whose frames will be evaluated in parallel.
+     * @param pool the pool where the frames will be evaluated.
+     * @param threshold the minimum number of particles a frame must have to
+     *                  be evaluated in parallel.
+     */
+    public ParallelSupplier(ParticleSupplier source, ForkJoinPool pool,
+                            int threshold) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("The threshold must be " +
+                    "positive");
+
+        this.source = source;
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the pool used by default for parallel evaluation, which is the
+     * {@link ForkJoinPool#commonPool() common pool} of the JVM. By default,
+     * it leaves one processor free for the main thread of the server, and
+     * since it is owned by the JVM, no threads are left behind when the
+     * plugin that uses this library is disabled or reloaded.
+     * @return the default pool.
+     */
+    public static ForkJoinPool defaultPool() {
+        return ForkJoinPool.commonPool();
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        ParticleBuffer out = new ParticleBuffer();
+        supplyInto(tick, out);
+        return out.stream();
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        if (!(source instanceof TransformedSupplier)
+                || ((TransformedSupplier) source).hasFrameOperators()) {
+            source.supplyInto(tick, sink);
+            return;
+        }
+
+        TransformedSupplier ts = (TransformedSupplier) source;
+        ParticleBuffer frame = new ParticleBuffer();
+        ts.getSource().supplyInto(tick, frame);
+        int size = frame.size();
+        if (size < threshold) {
+            Transform3[] transforms = ts.bind(tick);
+            for (int i = 0; i < size; i++) {
+                ts.emit(transforms, tick, sink, frame.particle(i),
+                        frame.x(i), frame.y(i), frame.z(i));
+            }
+            return;
+        }
+
+        Chunk root = new Chunk(ts, ts.bind(tick), tick, frame, 0, size,
+                Math.max(threshold / 4,
+                        size / (pool.getParallelism() * 4) + 1));
+        pool.invoke(root);
+        for (int i = 0; i < size; i++) {
+            sink.accept(root.particles[i], root.xs[i], root.ys[i],
+                    root.zs[i]);
+        }
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return source.isActive(tick);
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return source.nextActiveTick(tick);
+    }
+
+    @Override
+    public int period() {
+        return source.period();
+    }
+
+    @Override
+    public int levelsOfDetail() {
+        return source.levelsOfDetail();
+    }
+
+    @Override
+    public synchronized ParticleSupplier atDistance(double distance) {
+        ParticleSupplier level = source.atDistance(distance);
+        if (level == source) {
+            return this;
+        }
+        if (levels == null) {
+            levels = new IdentityHashMap<>();
+        }
+        return levels.computeIfAbsent(level,
+                l -> new ParallelSupplier(l, pool, threshold));
+    }
+
+    /**
+     * Transforms a range of a frame, splitting it while it is bigger than
+     * the chunk size. The results are written at the same indices of the
+     * shared output arrays.
+     */
+    private static final class Chunk extends RecursiveAction
+            implements ParticleSink {
+        private final TransformedSupplier supplier;
+        private final Transform3[] transforms;
+        private final int tick;
+        private final ParticleBuffer frame;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        final Particle[] particles;
+        final float[] xs;
+        final float[] ys;
+        final float[] zs;
+
+        private int index;
+
+        Chunk(TransformedSupplier supplier, Transform3[] transforms, int tick,
+              ParticleBuffer frame, int from, int to, int chunkSize) {
+            this(supplier, transforms, tick, frame, from, to, chunkSize,
+                    new Particle[frame.size()], new float[frame.size()],
+                    new float[frame.size()], new float[frame.size()]);
+        }
+
+        private Chunk(TransformedSupplier supplier, Transform3[] transforms,
+                      int tick, ParticleBuffer frame, int from, int to,
+                      int chunkSize, Particle[] particles, float[] xs,
+                      float[] ys, float[] zs) {
+            this.supplier = supplier;
+            this.transforms = transforms;
+            this.tick = tick;
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.particles = particles;
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+        }
+
+        private Chunk split(int from, int to) {
+            return new Chunk(supplier, transforms, tick, frame, from, to,
+                    chunkSize, particles, xs, ys, zs);
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkSize) {
+                int mid = (from + to) >>> 1;
+                invokeAll(split(from, mid), split(mid, to));
+                return;
+            }
+
+            for (index = from; index < to; index++) {
+                supplier.emit(transforms, tick, this, frame.particle(index),
+                        frame.x(index), frame.y(index), frame.z(index));
+            }
+        }
+
+        @Override
+        public void accept(Particle particle, float x, float y, float z) {
+            particles[index] = particle;
+            xs[index] = x;
+            ys[index] = y;
+            zs[index] = z;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.devcexx.libtrails;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.Getter;
 import lombok.With;
 import lombok.experimental.Tolerate;
 import org.bukkit.Effect;
@@ -28,6 +29,7 @@ import org.bukkit.entity.Player;
 import java.util.function.Function;
 
 @With
+@Getter
 @Builder
 @AllArgsConstructor
 public class Particle {
@@ -112,6 +114,14 @@ public class Particle {
         spawn0(w, new Location(w, x, y, z), tick);
     }
 
+    public void spawn(Player p, Location loc, int tick) {
+        spawn0(p, loc, tick);
+    }
+
+    public void spawn(World w, Location loc, int tick) {
+        spawn0(w, loc, tick);
+    }
+
     private void spawn0(Object o, Location loc, int tick) {
         float offx = this.offsetX.apply(tick);
         float offy = this.offsetY.apply(tick);
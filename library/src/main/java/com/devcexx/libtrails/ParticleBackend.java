@@ -0,0 +1,84 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+
+/**
+ * The output of the particles of the library. A backend receives whole
+ * frames, either for a single viewer or for every player of a world, and
+ * it may send them right away or keep them until {@link #flush()} is called.
+ * When the trails are run by a {@link TrailScheduler}, each backend is
+ * flushed once per tick, after all the trails have been run. A trail that
+ * runs its own task, instead, flushes its backend after each of its runs, so
+ * a backend shared by many of those trails is flushed once per trail on each
+ * tick.
+ *
+ * The frames passed to a backend are only valid during the call: callers
+ * reuse them, so backends that keep the particles until the flush must copy
+ * them.
+ *
+ * @see SpigotParticleBackend
+ * @see RecordingParticleBackend
+ * @see PacketParticleBackend
+ */
+public interface ParticleBackend {
+
+    /**
+     * Sends a frame to a single player.
+     * @param viewer the player.
+     * @param frame the frame, in world coordinates.
+     * @param tick the tick the frame belongs to.
+     */
+    void send(Player viewer, ParticleBuffer frame, int tick);
+
+    /**
+     * Sends the same frame to several players. Backends that encode the
+     * frames can override this method to encode the frame once for all of
+     * them. The default implementation sends the frame to each player
+     * separately.
+     * @param viewers the players.
+     * @param frame the frame, in world coordinates.
+     * @param tick the tick the frame belongs to.
+     */
+    default void send(Collection<? extends Player> viewers,
+                      ParticleBuffer frame, int tick) {
+        for (Player viewer : viewers) {
+            send(viewer, frame, tick);
+        }
+    }
+
+    /**
+     * Sends a frame to every player of a world that is inside of the
+     * visibility radius of each particle.
+     * @param world the world.
+     * @param frame the frame, in world coordinates.
+     * @param tick the tick the frame belongs to.
+     */
+    void broadcast(World world, ParticleBuffer frame, int tick);
+
+    /**
+     * Sends the frames kept by this backend, if any. It may be called
+     * several times per tick, see the description of this interface. The
+     * default implementation does nothing.
+     */
+    default void flush() {
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A growable buffer of particles stored as a structure of arrays. The
+ * components of the position of each particle are kept in three separate
+ * float arrays, and the particle itself is stored as an index into a palette
+ * of the distinct particles written into the buffer. This allows a whole frame
+ * of a {@link ParticleSupplier} to be stored and transformed without creating
+ * an object per particle.
+ *
+ * The buffer is intended to be reused between ticks: calling {@link #clear()}
+ * discards the stored particles but keeps both the allocated arrays and the
+ * palette, so a supplier that writes the same frame again will not allocate
+ * anything.
+ */
+public class ParticleBuffer implements ParticleSink {
+
+    /**
+     * The maximum number of palette entries that are kept between calls to
+     * {@link #clear()}. If the palette grows bigger than this, it is discarded
+     * to avoid retaining particles that may be no longer used.
+     */
+    private static final int MAX_RETAINED_PALETTE = 1024;
+
+    private final Map<Particle, Integer> paletteIndex = new IdentityHashMap<>();
+    private Particle[] palette;
+    private int paletteSize;
+
+    private int[] particles;
+    private float[] xs;
+    private float[] ys;
+    private float[] zs;
+    private int size;
+
+    private Particle lastParticle;
+    private int lastIndex;
+
+    /**
+     * Creates a new empty buffer with a default initial capacity.
+     */
+    public ParticleBuffer() {
+        this(64);
+    }
+
+    /**
+     * Creates a new empty buffer.
+     * @param capacity the initial number of particles that the buffer can hold
+     *                 without growing.
+     */
+    public ParticleBuffer(int capacity) {
+        capacity = Math.max(1, capacity);
+        this.particles = new int[capacity];
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.zs = new float[capacity];
+        this.palette = new Particle[8];
+    }
+
+    @Override
+    public void accept(Particle particle, float x, float y, float z) {
+        add(indexOf(particle), x, y, z);
+    }
+
+    /**
+     * Appends a particle whose particle is already present in the palette of
+     * this buffer.
+     * @param paletteIndex the index of the particle in the palette.
+     * @param x the x component of the position of the particle.
+     * @param y the y component of the position of the particle.
+     * @param z the z component of the position of the particle.
+     */
+    public void add(int paletteIndex, float x, float y, float z) {
+        if (size == xs.length) {
+            grow(size + 1);
+        }
+        particles[size] = paletteIndex;
+        xs[size] = x;
+        ys[size] = y;
+        zs[size] = z;
+        size++;
+    }
+
+    /**
+     * Returns the index of the specified particle into the palette of this
+     * buffer, adding it to the palette if it is not present yet. The particles
+     * are compared by identity.
+     * @param particle the particle.
+     * @return the index of the particle in the palette.
+     */
+    public int indexOf(Particle particle) {
+        if (particle == lastParticle) {
+            return lastIndex;
+        }
+
+        Integer index = paletteIndex.get(particle);
+        if (index == null) {
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, paletteSize * 2);
+            }
+            index = paletteSize;
+            palette[paletteSize++] = particle;
+            paletteIndex.put(particle, index);
+        }
+
+        lastParticle = particle;
+        lastIndex = index;
+        return index;
+    }
+
+    /**
+     * Ensures that the buffer is able to hold, at least, the specified number
+     * of particles without growing.
+     * @param capacity the required capacity.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > xs.length) {
+            grow(capacity);
+        }
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, xs.length + (xs.length >> 1));
+        particles = Arrays.copyOf(particles, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        zs = Arrays.copyOf(zs, capacity);
+    }
+
+    /**
+     * Removes all the particles of the buffer. The palette and the allocated
+     * arrays are kept, to be reused by the next frame.
+     */
+    public void clear() {
+        size = 0;
+        if (paletteSize > MAX_RETAINED_PALETTE) {
+            Arrays.fill(palette, 0, paletteSize, null);
+            paletteSize = 0;
+            paletteIndex.clear();
+            lastParticle = null;
+        }
+    }
+
+    /**
+     * Returns the number of particles stored in the buffer.
+     * @return the number of particles stored in the buffer.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determines whether the buffer contains any particle or not.
+     * @return true if the buffer is empty. false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the particle stored at the specified position.
+     * @param i the position of the particle in the buffer.
+     * @return the particle stored at the specified position.
+     */
+    public Particle particle(int i) {
+        return palette[particles[i]];
+    }
+
+    /**
+     * Returns the x component of the particle stored at the specified
+     * position.
+     * @param i the position of the particle in the buffer.
+     * @return the x component of the particle.
+     */
+    public float x(int i) {
+        return xs[i];
+    }
+
+    /**
+     * Returns the y component of the particle stored at the specified
+     * position.
+     * @param i the position of the particle in the buffer.
+     * @return the y component of the particle.
+     */
+    public float y(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Returns the z component of the particle stored at the specified
+     * position.
+     * @param i the position of the particle in the buffer.
+     * @return the z component of the particle.
+     */
+    public float z(int i) {
+        return zs[i];
+    }
+
+    /**
+     * Replaces the position of the particle stored at the specified position.
+     * @param i the position of the particle in the buffer.
+     * @param x the new x component.
+     * @param y the new y component.
+     * @param z the new z component.
+     */
+    public void set(int i, float x, float y, float z) {
+        xs[i] = x;
+        ys[i] = y;
+        zs[i] = z;
+    }
+
+    /**
+     * Replaces the particle stored at the specified position, and its
+     * position.
+     * @param i the position of the particle in the buffer.
+     * @param particle the new particle.
+     * @param x the new x component.
+     * @param y the new y component.
+     * @param z the new z component.
+     */
+    public void set(int i, Particle particle, float x, float y, float z) {
+        particles[i] = indexOf(particle);
+        set(i, x, y, z);
+    }
+
+    /**
+     * Returns the backing array of the x components. Only the first
+     * {@link #size()} entries are meaningful, and the returned array may be
+     * replaced by a new one if the buffer grows.
+     * @return the backing array of the x components.
+     */
+    public float[] xs() {
+        return xs;
+    }
+
+    /**
+     * Returns the backing array of the y components. Only the first
+     * {@link #size()} entries are meaningful, and the returned array may be
+     * replaced by a new one if the buffer grows.
+     * @return the backing array of the y components.
+     */
+    public float[] ys() {
+        return ys;
+    }
+
+    /**
+     * Returns the backing array of the z components. Only the first
+     * {@link #size()} entries are meaningful, and the returned array may be
+     * replaced by a new one if the buffer grows.
+     * @return the backing array of the z components.
+     */
+    public float[] zs() {
+        return zs;
+    }
+
+    /**
+     * Returns the backing array of the palette indices of each particle. Only
+     * the first {@link #size()} entries are meaningful, and the returned array
+     * may be replaced by a new one if the buffer grows.
+     * @return the backing array of the palette indices.
+     */
+    public int[] indices() {
+        return particles;
+    }
+
+    /**
+     * Returns the particle stored at the specified position of the palette.
+     * @param index the palette index.
+     * @return the particle stored at that palette index.
+     */
+    public Particle paletteEntry(int index) {
+        return palette[index];
+    }
+
+    /**
+     * Returns the number of distinct particles of the palette.
+     * @return the number of distinct particles of the palette.
+     */
+    public int paletteSize() {
+        return paletteSize;
+    }
+
+    /**
+     * Pushes all the particles stored in this buffer, in order, into the
+     * specified sink.
+     * @param sink the sink.
+     */
+    public void forEach(ParticleSink sink) {
+        for (int i = 0; i < size; i++) {
+            sink.accept(palette[particles[i]], xs[i], ys[i], zs[i]);
+        }
+    }
+
+    /**
+     * Returns the particles stored in this buffer as a stream of
+     * {@link SuppliedParticle}. The stream is backed by the buffer, so it
+     * must be consumed before the buffer is modified.
+     * @return a stream with the particles of this buffer.
+     */
+    public Stream<SuppliedParticle> stream() {
+        return IntStream.range(0, size).mapToObj(i -> new SuppliedParticle(
+                palette[particles[i]], new Vector3(xs[i], ys[i], zs[i])));
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+/**
+ * Receives the particles pushed by a {@link ParticleSupplier} through its
+ * {@link ParticleSupplier#supplyInto(int, ParticleSink)} method. Unlike the
+ * {@link java.util.stream.Stream} based API, the position of each particle is
+ * passed as its raw components, so no intermediate objects need to be created
+ * for each supplied particle.
+ */
+@FunctionalInterface
+public interface ParticleSink {
+
+    /**
+     * Accepts a particle that should be rendered at the specified position.
+     * @param particle the particle that should be rendered.
+     * @param x the x component of the position of the particle respect the
+     *          origin.
+     * @param y the y component of the position of the particle respect the
+     *          origin.
+     * @param z the z component of the position of the particle respect the
+     *          origin.
+     */
+    void accept(Particle particle, float x, float y, float z);
+}
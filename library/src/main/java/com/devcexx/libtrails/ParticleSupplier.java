@@ -16,6 +16,7 @@
 
 package com.devcexx.libtrails;
 
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -38,6 +39,188 @@ public interface ParticleSupplier {
      */
     Stream<SuppliedParticle> supply(int tick);
 
+    /**
+     * Pushes the particles that should be render at the specified moment into
+     * the specified sink. This method is equivalent to {@link #supply(int)},
+     * but it doesn't require to create a {@link SuppliedParticle} and a
+     * {@link Vector3} for each particle, so implementations are encouraged to
+     * override it. The default implementation is an adapter over
+     * {@link #supply(int)}.
+     * @param tick a number that the particle rendering should be dependent of.
+     *             The same rules as in {@link #supply(int)} apply.
+     * @param sink the sink where the particles will be pushed, in the same
+     *             order as they would be returned by {@link #supply(int)}.
+     */
+    default void supplyInto(int tick, ParticleSink sink) {
+        supply(tick).forEach(p -> sink.accept(p.particle, p.position.x,
+                p.position.y, p.position.z));
+    }
+
+    /**
+     * Determines whether this supplier emits any particle at the specified
+     * tick. Callers may use this method to skip the work related to a
+     * supplier on the ticks where it is idle.
+     * @param tick the tick.
+     * @return false if the supplier is known to not emit any particle at the
+     * specified tick. true otherwise. The default implementation returns
+     * true.
+     */
+    default boolean isActive(int tick) {
+        return true;
+    }
+
+    /**
+     * Returns the first tick, greater or equal to the specified one, at which
+     * this supplier may emit particles. This method must be consistent with
+     * {@link #isActive(int)}: it must never skip a tick where the supplier is
+     * active.
+     * @param tick the tick where the search starts.
+     * @return the first tick, greater or equal to {@code tick}, at which the
+     * supplier may be active, or {@link Integer#MAX_VALUE} if it won't be
+     * active anymore. The default implementation returns {@code tick}.
+     */
+    default int nextActiveTick(int tick) {
+        return tick;
+    }
+
+    /**
+     * Returns the period of this supplier, this is, the number of ticks after
+     * which its output repeats. A supplier with period {@code p} must return
+     * the same particles at the same positions for the ticks {@code t} and
+     * {@code t + p}, for every tick {@code t}.
+     * @return the period of this supplier, in ticks, or 0 if the supplier is
+     * not known to be periodic. The default implementation returns 0.
+     */
+    default int period() {
+        return 0;
+    }
+
+    /**
+     * Creates a {@link BakedSupplier} that precomputes all the frames of the
+     * specified period of this supplier.
+     * @param period the period of the supplier, in ticks.
+     * @return a new supplier that serves the precomputed frames of this one.
+     * @see BakedSupplier
+     */
+    default ParticleSupplier bake(int period) {
+        return new BakedSupplier(this, period);
+    }
+
+    /**
+     * Bakes this supplier with its own {@link #period()}, if it is known.
+     * @return a new supplier that serves the precomputed frames of this one,
+     * or this supplier, if it is not periodic.
+     * @see BakedSupplier
+     */
+    default ParticleSupplier bake() {
+        int period = period();
+        return period > 0 ? bake(period) : this;
+    }
+
+    /**
+     * Returns the number of levels of detail of this supplier. Callers that
+     * know the distance of each viewer to the origin of the effect should use
+     * {@link #atDistance(double)} to render it when this method returns more
+     * than one level.
+     * @return the number of levels of detail of this supplier. The default
+     * implementation returns 1.
+     * @see LodSupplier
+     */
+    default int levelsOfDetail() {
+        return 1;
+    }
+
+    /**
+     * Returns the supplier that should be rendered for a viewer placed at the
+     * specified distance of the origin of the effect.
+     * @param distance the distance, in Minecraft blocks.
+     * @return the supplier for that distance. The default implementation
+     * returns this supplier.
+     * @see LodSupplier
+     */
+    default ParticleSupplier atDistance(double distance) {
+        return this;
+    }
+
+    /**
+     * Creates a {@link LodSupplier} whose levels of detail are this supplier
+     * decimated: each level emits half of the particles of the previous one.
+     * @param distances the distances, in Minecraft blocks, where each level
+     *                  starts being used, in ascending order.
+     * @return a new supplier with the levels of detail of this one.
+     * @see LodSupplier#decimated(ParticleSupplier, double...)
+     */
+    default ParticleSupplier withLevelsOfDetail(double... distances) {
+        return LodSupplier.decimated(this, distances);
+    }
+
+    /**
+     * Creates a {@link DeduplicatedSupplier} that removes, from each frame of
+     * this supplier, the particles that are closer than the specified
+     * distance to a previous particle of the same kind.
+     * @param epsilon the distance, in Minecraft blocks, under which two
+     *                particles are merged.
+     * @return the new supplier.
+     */
+    default ParticleSupplier deduplicate(float epsilon) {
+        return new DeduplicatedSupplier(this, epsilon);
+    }
+
+    /**
+     * Creates a {@link ParallelSupplier} that evaluates the transformations
+     * applied over this supplier in parallel, on the default pool, when its
+     * frames have at least {@link ParallelSupplier#DEFAULT_THRESHOLD}
+     * particles. The functions of those transformations must be thread safe.
+     * @return the new supplier.
+     */
+    default ParticleSupplier parallel() {
+        return parallel(ParallelSupplier.defaultPool(),
+                ParallelSupplier.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a {@link ParallelSupplier} that evaluates the transformations
+     * applied over this supplier in parallel. The functions of those
+     * transformations must be thread safe.
+     * @param pool the pool where the frames will be evaluated.
+     * @param threshold the minimum number of particles a frame must have to
+     *                  be evaluated in parallel.
+     * @return the new supplier.
+     */
+    default ParticleSupplier parallel(ForkJoinPool pool, int threshold) {
+        return new ParallelSupplier(this, pool, threshold);
+    }
+
+    /**
+     * Creates a {@link SpreadSupplier} that divides each frame of this
+     * supplier in the specified number of slices of the same size, emitting
+     * one of them on each tick.
+     * @param ticks the number of ticks each frame is spread across.
+     * @return a new supplier that spreads the frames of this one.
+     * @see SpreadSupplier
+     */
+    default ParticleSupplier spread(int ticks) {
+        return new SpreadSupplier(this, ticks, 0);
+    }
+
+    /**
+     * Creates a {@link SpreadSupplier} that emits, at most, the specified
+     * number of particles of each frame of this supplier per tick, unless
+     * that would require more than {@code maxTicks} ticks to emit the whole
+     * frame.
+     * @param particlesPerTick the number of particles of each frame emitted
+     *                         per tick.
+     * @param maxTicks the maximum number of ticks each frame is spread across.
+     * @return a new supplier that spreads the frames of this one.
+     * @see SpreadSupplier
+     */
+    default ParticleSupplier spreadByBudget(int particlesPerTick,
+                                            int maxTicks) {
+        if (particlesPerTick <= 0)
+            throw new IllegalArgumentException("The budget must be positive");
+        return new SpreadSupplier(this, maxTicks, particlesPerTick);
+    }
+
     /**
      * Creates a {@link ParticleSupplier} whose {@link #supply(int)} method
      * returns the current output stream transformed by the specified function.
@@ -64,10 +247,12 @@ public interface ParticleSupplier {
      *          transformed particle.
      * @return a new ParticleSupplier with its {@link #supply(int)} output value
      * transformed as requested.
+     * @see #transformFrame(FrameTransformer)
      */
     default ParticleSupplier transformParticles(
             BiFunction<SuppliedParticle, Integer, SuppliedParticle> f) {
-        return transformStream((s, t) -> s.map(p -> f.apply(p, t)));
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.ParticleOperator(f));
     }
 
     /**
@@ -80,19 +265,59 @@ public interface ParticleSupplier {
      *          transformed particle.
      * @return a new ParticleSupplier with its {@link #supply(int)} output value
      * transformed as requested.
+     * @see #transformFrame(FrameTransformer)
      */
     default ParticleSupplier transformVectors(Function<Vector3, Vector3> f) {
-        return transformStream((s, t) -> s.map(p -> p.with(f.apply(p.position))));
+        if (f instanceof Transform3) {
+            return transformAffine((Transform3) f);
+        }
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.VectorOperator(f));
+    }
+
+    /**
+     * Creates a {@link ParticleSupplier} whose {@link #supply(int)} returns
+     * the current output stream where all of its entries are transformed by
+     * the specified affine transformation. This is equivalent to
+     * {@link #transformVectors(Function)}, but the transformation is applied
+     * directly over the components of each particle.
+     * @param transform the transformation to apply.
+     * @return a new ParticleSupplier with its {@link #supply(int)} output value
+     * transformed as requested.
+     */
+    default ParticleSupplier transformAffine(Transform3 transform) {
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.AffineOperator(transform));
     }
 
+    /**
+     * Creates a {@link ParticleSupplier} whose {@link #supply(int)} returns
+     * the current output stream transformed by the specified frame
+     * transformer. This is equivalent to
+     * {@link #transformParticles(BiFunction)}, but the transformer works
+     * over the whole frame, stored in a {@link ParticleBuffer}, instead of
+     * being called with a new {@link SuppliedParticle} for each particle.
+     * @param f the transformer of each frame.
+     * @return a new ParticleSupplier with its {@link #supply(int)} output value
+     * transformed as requested.
+     */
+    default ParticleSupplier transformFrame(FrameTransformer f) {
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.FrameOperator(f));
+    }
+
+    /**
+     * Creates a {@link CompositeSupplier} that renders the output of this
+     * supplier followed by the output of the specified ones.
+     * @param others the suppliers to combine with this one.
+     * @return a new ParticleSupplier that renders all the specified suppliers
+     * together.
+     */
     default ParticleSupplier combine(ParticleSupplier... others) {
-        return transformStream((s, t) -> {
-            Stream<SuppliedParticle> stream = s;
-            for (ParticleSupplier p : others) {
-                stream = Stream.concat(s, p.supply(t));
-            }
-            return stream;
-        });
+        ParticleSupplier[] children = new ParticleSupplier[others.length + 1];
+        children[0] = this;
+        System.arraycopy(others, 0, children, 1, others.length);
+        return new CompositeSupplier(children);
     }
 
     /**
@@ -105,7 +330,9 @@ public interface ParticleSupplier {
      * transformed as requested.
      */
     default ParticleSupplier translate(Function<Integer, Vector3> f) {
-        return transformParticles((p, t) -> p.with(p.position.add(f.apply(t))));
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.AffineOperator(t ->
+                        Transform3.translation(f.apply(t))));
     }
 
     /**
@@ -118,8 +345,9 @@ public interface ParticleSupplier {
      * transformed as requested.
      */
     default ParticleSupplier scale(Function<Integer, Float> f) {
-        return transformParticles((p, t) -> p.with(p.position
-                .scale(f.apply(t))));
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.AffineOperator(t ->
+                        Transform3.scaling(f.apply(t))));
     }
 
     /**
@@ -133,8 +361,9 @@ public interface ParticleSupplier {
      * transformed as requested.
      */
     default ParticleSupplier rotateX(Function<Integer, Float> f) {
-        return transformParticles((p, t) -> p.with(p.position
-                .rotateX(f.apply(t))));
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.AffineOperator(t ->
+                        Transform3.rotationX(f.apply(t))));
     }
 
     /**
@@ -148,8 +377,9 @@ public interface ParticleSupplier {
      * transformed as requested.
      */
     default ParticleSupplier rotateY(Function<Integer, Float> f) {
-        return transformParticles((p, t) -> p.with(p.position
-                .rotateY(f.apply(t))));
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.AffineOperator(t ->
+                        Transform3.rotationY(f.apply(t))));
     }
 
     /**
@@ -163,8 +393,9 @@ public interface ParticleSupplier {
      * transformed as requested.
      */
     default ParticleSupplier rotateZ(Function<Integer, Float> f) {
-        return transformParticles((p, t) -> p.with(p.position
-                .rotateZ(f.apply(t))));
+        return TransformedSupplier.append(this,
+                new TransformedSupplier.AffineOperator(t ->
+                        Transform3.rotationZ(f.apply(t))));
     }
 
 }
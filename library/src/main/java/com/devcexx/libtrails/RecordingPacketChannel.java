@@ -0,0 +1,83 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link PacketChannel} that records the packets written to it in memory,
+ * so a {@link PacketParticleBackend} can be tested, or its output inspected,
+ * without a server.
+ *
+ * The packets written between two flushes are kept as pending; each flush
+ * moves them to the list of flushed packets.
+ */
+public class RecordingPacketChannel implements PacketChannel {
+
+    private final List<byte[]> pending = new ArrayList<>();
+    private final List<byte[]> flushed = new ArrayList<>();
+    private int flushes;
+
+    @Override
+    public synchronized void write(byte[] data, int offset, int length) {
+        pending.add(Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushed.addAll(pending);
+        pending.clear();
+        flushes++;
+    }
+
+    /**
+     * Returns the packets written since the last flush.
+     * @return an unmodifiable copy of the pending packets.
+     */
+    public synchronized List<byte[]> getPending() {
+        return Collections.unmodifiableList(new ArrayList<>(pending));
+    }
+
+    /**
+     * Returns the packets that have been flushed, in the order they were
+     * written.
+     * @return an unmodifiable copy of the flushed packets.
+     */
+    public synchronized List<byte[]> getFlushed() {
+        return Collections.unmodifiableList(new ArrayList<>(flushed));
+    }
+
+    /**
+     * Returns the number of times this channel has been flushed.
+     * @return the number of flushes.
+     */
+    public synchronized int getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Discards all the recorded packets.
+     */
+    public synchronized void clear() {
+        pending.clear();
+        flushed.clear();
+        flushes = 0;
+    }
+}
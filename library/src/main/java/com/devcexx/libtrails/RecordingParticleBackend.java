@@ -0,0 +1,139 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link ParticleBackend} that records the frames it receives in memory,
+ * instead of spawning them. It doesn't call any method of the players or the
+ * worlds it receives, so it can be used to test trails, or to measure their
+ * load, without a server.
+ *
+ * The frames received between two flushes are kept as pending; each flush
+ * moves them to the list of flushed batches.
+ */
+public class RecordingParticleBackend implements ParticleBackend {
+
+    private final List<Batch> pending = new ArrayList<>();
+    private final List<Batch> flushed = new ArrayList<>();
+    private int flushes;
+
+    @Override
+    public synchronized void send(Player viewer, ParticleBuffer frame,
+                                  int tick) {
+        pending.add(new Batch(viewer, null, tick, frame));
+    }
+
+    @Override
+    public synchronized void broadcast(World world, ParticleBuffer frame,
+                                       int tick) {
+        pending.add(new Batch(null, world, tick, frame));
+    }
+
+    @Override
+    public synchronized void flush() {
+        flushed.addAll(pending);
+        pending.clear();
+        flushes++;
+    }
+
+    /**
+     * Returns the batches received since the last flush.
+     * @return an unmodifiable copy of the pending batches.
+     */
+    public synchronized List<Batch> getPending() {
+        return Collections.unmodifiableList(new ArrayList<>(pending));
+    }
+
+    /**
+     * Returns the batches that have been flushed, in the order they were
+     * received.
+     * @return an unmodifiable copy of the flushed batches.
+     */
+    public synchronized List<Batch> getFlushed() {
+        return Collections.unmodifiableList(new ArrayList<>(flushed));
+    }
+
+    /**
+     * Returns the number of times this backend has been flushed.
+     * @return the number of flushes.
+     */
+    public synchronized int getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Returns the total number of particles of the flushed batches.
+     * @return the number of flushed particles.
+     */
+    public synchronized long getFlushedParticles() {
+        long count = 0;
+        for (Batch batch : flushed) {
+            count += batch.particles.size();
+        }
+        return count;
+    }
+
+    /**
+     * Discards all the recorded batches.
+     */
+    public synchronized void clear() {
+        pending.clear();
+        flushed.clear();
+        flushes = 0;
+    }
+
+    /**
+     * A frame received by a {@link RecordingParticleBackend}.
+     */
+    public static final class Batch {
+
+        /**
+         * The player the frame was sent to, or null if it was broadcast.
+         */
+        public final Player viewer;
+
+        /**
+         * The world the frame was broadcast to, or null if it was sent to a
+         * single player.
+         */
+        public final World world;
+
+        /**
+         * The tick the frame belongs to.
+         */
+        public final int tick;
+
+        /**
+         * A copy of the particles of the frame.
+         */
+        public final ParticleBuffer particles = new ParticleBuffer();
+
+        Batch(Player viewer, World world, int tick, ParticleBuffer frame) {
+            this.viewer = viewer;
+            this.world = world;
+            this.tick = tick;
+            frame.forEach(particles);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+/**
+ * Scalar implementation of the kernels of {@link FrameKernels}. It is shared
+ * by all the versions of {@link FrameKernels}, and used whenever a faster
+ * implementation is not available. Each kernel transforms the points of the
+ * range [from, to) in place.
+ */
+final class ScalarFrameKernels {
+
+    private ScalarFrameKernels() {
+    }
+
+    static void affine(Transform3 t, float[] xs, float[] ys, float[] zs,
+                       int from, int to) {
+        for (int i = from; i < to; i++) {
+            float x = xs[i];
+            float y = ys[i];
+            float z = zs[i];
+            xs[i] = t.m00 * x + t.m01 * y + t.m02 * z + t.m03;
+            ys[i] = t.m10 * x + t.m11 * y + t.m12 * z + t.m13;
+            zs[i] = t.m20 * x + t.m21 * y + t.m22 * z + t.m23;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+/**
+ * A {@link ParticleBackend} that spawns each particle with the
+ * {@code playEffect} method of the Spigot API, as soon as its frame is
+ * received. A single {@link Location} is reused for all the particles of each
+ * frame.
+ */
+public final class SpigotParticleBackend implements ParticleBackend {
+
+    /**
+     * The shared instance of this backend, which has no state.
+     */
+    public static final SpigotParticleBackend INSTANCE =
+            new SpigotParticleBackend();
+
+    private SpigotParticleBackend() {
+    }
+
+    @Override
+    public void send(Player viewer, ParticleBuffer frame, int tick) {
+        Location loc = new Location(viewer.getWorld(), 0, 0, 0);
+        for (int i = 0; i < frame.size(); i++) {
+            loc.setX(frame.x(i));
+            loc.setY(frame.y(i));
+            loc.setZ(frame.z(i));
+            frame.particle(i).spawn(viewer, loc, tick);
+        }
+    }
+
+    @Override
+    public void broadcast(World world, ParticleBuffer frame, int tick) {
+        Location loc = new Location(world, 0, 0, 0);
+        for (int i = 0; i < frame.size(); i++) {
+            loc.setX(frame.x(i));
+            loc.setY(frame.y(i));
+            loc.setZ(frame.z(i));
+            frame.particle(i).spawn(world, loc, tick);
+        }
+    }
+}
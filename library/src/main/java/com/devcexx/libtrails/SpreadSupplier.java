@@ -0,0 +1,177 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.stream.Stream;
+
+/**
+ * A {@link ParticleSupplier} that spreads each frame of another supplier
+ * across several ticks, so big frames don't make the server spawn all of their
+ * particles in a single tick. Each frame emitted by the source supplier at the
+ * tick {@code t} is divided in consecutive slices, and the {@code i}-th slice
+ * is emitted at the tick {@code t + i}.
+ *
+ * The size of the slices can be either a fixed fraction of the frame, or a
+ * per-tick particle budget. In both cases, a frame is always fully emitted
+ * within the configured number of ticks.
+ *
+ * This supplier keeps the last evaluated frames of its source, so it should
+ * not be shared between callers that use unrelated ticks. Access to these
+ * frames is synchronized, so the supplier can be evaluated from several
+ * threads.
+ */
+public class SpreadSupplier implements ParticleSupplier {
+
+    /**
+     * The supplier whose frames are spread.
+     */
+    public final ParticleSupplier source;
+
+    /**
+     * The maximum number of ticks a frame is spread across.
+     */
+    public final int ticks;
+
+    /**
+     * The number of particles per tick of each frame, or 0 if the frames are
+     * divided in {@link #ticks} slices of the same size.
+     */
+    public final int budget;
+
+    private final int[] cachedTicks;
+    private final ParticleBuffer[] cachedFrames;
+
+    /**
+     * Creates a new spread supplier.
+     * @param source the supplier whose frames will be spread.
+     * @param ticks the maximum number of ticks each frame is spread across.
+     * @param budget the number of particles of each frame that are emitted
+     *               per tick, or 0 to divide each frame in {@code ticks}
+     *               slices of the same size. If a frame cannot be emitted in
+     *               {@code ticks} ticks with this budget, the budget is
+     *               increased for that frame.
+     */
+    public SpreadSupplier(ParticleSupplier source, int ticks, int budget) {
+        if (ticks <= 0)
+            throw new IllegalArgumentException("The number of ticks must " +
+                    "be positive");
+        if (budget < 0)
+            throw new IllegalArgumentException("The budget cannot be " +
+                    "negative");
+
+        this.source = source;
+        this.ticks = ticks;
+        this.budget = budget;
+        this.cachedTicks = new int[ticks];
+        this.cachedFrames = new ParticleBuffer[ticks];
+    }
+
+    /**
+     * Returns the tick of the source supplier whose frame is emitted
+     * {@code back} ticks after it, or {@link Integer#MIN_VALUE} if that frame
+     * doesn't exist.
+     */
+    private int frameTick(int tick, int back) {
+        int ft = tick - back;
+        int period = source.period();
+        if (period > 0) {
+            return Math.floorMod(ft, period);
+        }
+        return ft < 0 ? Integer.MIN_VALUE : ft;
+    }
+
+    /**
+     * Returns the frame of the source supplier at the tick {@code ft}, which
+     * is emitted {@code back} ticks after it. The frames are cached by the
+     * tick they were emitted at, before being wrapped into the period of the
+     * source, so the frames of a window of {@link #ticks} consecutive ticks
+     * never share their slot, whatever the period is.
+     */
+    private ParticleBuffer frame(int tick, int back, int ft) {
+        int slot = Math.floorMod(tick - back, ticks);
+        ParticleBuffer buffer = cachedFrames[slot];
+        if (buffer == null) {
+            buffer = cachedFrames[slot] = new ParticleBuffer();
+        } else if (cachedTicks[slot] == ft) {
+            return buffer;
+        }
+
+        buffer.clear();
+        source.supplyInto(ft, buffer);
+        cachedTicks[slot] = ft;
+        return buffer;
+    }
+
+    private int sliceSize(int frameSize) {
+        int even = (frameSize + ticks - 1) / ticks;
+        return budget == 0 ? even : Math.max(budget, even);
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        ParticleBuffer out = new ParticleBuffer();
+        supplyInto(tick, out);
+        return out.stream();
+    }
+
+    @Override
+    public synchronized void supplyInto(int tick, ParticleSink sink) {
+        for (int i = 0; i < ticks; i++) {
+            int ft = frameTick(tick, i);
+            if (ft == Integer.MIN_VALUE) {
+                break;
+            }
+            if (!source.isActive(ft)) {
+                continue;
+            }
+
+            ParticleBuffer frame = frame(tick, i, ft);
+            int size = frame.size();
+            int slice = sliceSize(size);
+            int from = i * slice;
+            int to = Math.min(size, from + slice);
+            for (int j = from; j < to; j++) {
+                sink.accept(frame.particle(j), frame.x(j), frame.y(j),
+                        frame.z(j));
+            }
+        }
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        for (int i = 0; i < ticks; i++) {
+            int ft = frameTick(tick, i);
+            if (ft == Integer.MIN_VALUE) {
+                break;
+            }
+            if (source.isActive(ft)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return isActive(tick) ? tick : source.nextActiveTick(tick);
+    }
+
+    @Override
+    public int period() {
+        return source.period();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+/**
+ * Provides the square root and trigonometric functions used by the library,
+ * with a selectable trade-off between accuracy and throughput. The precision
+ * is global, so it is intended to be set once, for instance when the plugin
+ * that uses this library is enabled.
+ *
+ * The default precision is {@link Precision#LEGACY}, which gives the same
+ * results as the versions of the library prior to the precision tiers. The
+ * error bounds documented in {@link Precision} have been measured over the
+ * whole positive float range for the square root functions, and over the
+ * interval [-16π, 16π] for the trigonometric ones. The table based tiers
+ * reduce bigger angles modulo 2π before looking them up.
+ */
+public abstract class TrailMath {
+
+    /**
+     * The precision tiers available.
+     */
+    public enum Precision {
+        /**
+         * Uses {@link Math#sqrt(double)} and {@link StrictMath} trigonometric
+         * functions. The results are correctly rounded, and identical in all
+         * the JVMs.
+         */
+        STRICT,
+
+        /**
+         * Uses {@link Math#sin(double)} and {@link Math#cos(double)}, and the
+         * approximate square root functions of {@link TrailUtil}, with a
+         * maximum relative error of 1.8e-3. These are the functions used by the
+         * library before the precision tiers were introduced, so this tier
+         * reproduces its results exactly.
+         */
+        LEGACY,
+
+        /**
+         * Uses the fast inverse square root refined with
+         * {@link #getNewtonIterations()} Newton iterations (2 by default,
+         * with a maximum relative error of 4.6e-6), and a 4096 entries sine
+         * table with linear interpolation, with a maximum absolute error of
+         * 3.6e-7.
+         */
+        FAST,
+
+        /**
+         * Uses the fast inverse square root with a single Newton iteration,
+         * with a maximum relative error of 1.8e-3, and a 4096 entries sine
+         * table without interpolation, with a maximum absolute error of
+         * 7.7e-4.
+         */
+        FASTEST
+    }
+
+    private static final int SIN_BITS = 12;
+    private static final int SIN_SIZE = 1 << SIN_BITS;
+    private static final int SIN_MASK = SIN_SIZE - 1;
+    private static final int COS_OFFSET = SIN_SIZE / 4;
+    private static final double TWO_PI = 2 * Math.PI;
+    private static final double TABLE_FACTOR = SIN_SIZE / TWO_PI;
+
+    /**
+     * Contains the sine of SIN_SIZE equidistant angles of the interval
+     * [0, 2π], plus an extra entry to interpolate the last one.
+     */
+    private static final float[] SIN_TABLE = new float[SIN_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= SIN_SIZE; i++) {
+            SIN_TABLE[i] = (float) StrictMath.sin(i / TABLE_FACTOR);
+        }
+    }
+
+    private static volatile Precision precision = Precision.LEGACY;
+    private static volatile int newtonIterations = 2;
+
+    /**
+     * Returns the precision currently used.
+     * @return the precision currently used.
+     */
+    public static Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Sets the precision that will be used by all the functions of this class.
+     * @param precision the new precision.
+     */
+    public static void setPrecision(Precision precision) {
+        if (precision == null)
+            throw new IllegalArgumentException("precision cannot be null");
+        TrailMath.precision = precision;
+    }
+
+    /**
+     * Returns the number of Newton iterations used to refine the inverse
+     * square root in the {@link Precision#FAST} tier.
+     * @return the number of Newton iterations.
+     */
+    public static int getNewtonIterations() {
+        return newtonIterations;
+    }
+
+    /**
+     * Sets the number of Newton iterations used to refine the inverse square
+     * root in the {@link Precision#FAST} tier. Each iteration roughly squares
+     * the relative error: 1 iteration gives 1.8e-3, 2 give 4.6e-6 and 3 are
+     * within the float precision.
+     * @param iterations the number of iterations, between 1 and 4.
+     */
+    public static void setNewtonIterations(int iterations) {
+        if (iterations < 1 || iterations > 4)
+            throw new IllegalArgumentException("The number of iterations " +
+                    "must be between 1 and 4");
+        newtonIterations = iterations;
+    }
+
+    /**
+     * Returns the inverse square root of the specified number.
+     * @param n A number greater than zero.
+     * @return the inverse square root of the specified number.
+     */
+    public static double isqrt(double n) {
+        switch (precision) {
+            case STRICT:
+                return 1.0 / Math.sqrt(n);
+            case LEGACY:
+                return TrailUtil.isqrt(n);
+            case FAST:
+                return isqrt(n, newtonIterations);
+            default:
+                return TrailUtil.isqrt(n);
+        }
+    }
+
+    /**
+     * Returns the square root of the specified number.
+     * @param n A number greater or equal to zero.
+     * @return the square root of the specified number.
+     */
+    public static double sqrt(double n) {
+        switch (precision) {
+            case STRICT:
+                return Math.sqrt(n);
+            case LEGACY:
+                return TrailUtil.sqrt(n);
+            case FAST:
+                return n == 0 ? 0 : 1.0 / isqrt(n, newtonIterations);
+            default:
+                return n == 0 ? 0 : TrailUtil.sqrt(n);
+        }
+    }
+
+    /**
+     * Returns the sine of the specified angle.
+     * @param angle the angle, in radians.
+     * @return the sine of the angle.
+     */
+    public static double sin(double angle) {
+        switch (precision) {
+            case STRICT:
+                return StrictMath.sin(angle);
+            case LEGACY:
+                return Math.sin(angle);
+            case FAST:
+                return lerpSin(angle % TWO_PI * TABLE_FACTOR);
+            default:
+                return SIN_TABLE[(int) Math.floor(angle % TWO_PI * TABLE_FACTOR
+                        + 0.5) & SIN_MASK];
+        }
+    }
+
+    /**
+     * Returns the cosine of the specified angle.
+     * @param angle the angle, in radians.
+     * @return the cosine of the angle.
+     */
+    public static double cos(double angle) {
+        switch (precision) {
+            case STRICT:
+                return StrictMath.cos(angle);
+            case LEGACY:
+                return Math.cos(angle);
+            case FAST:
+                return lerpSin(angle % TWO_PI * TABLE_FACTOR + COS_OFFSET);
+            default:
+                return SIN_TABLE[((int) Math.floor(angle % TWO_PI
+                        * TABLE_FACTOR + 0.5) + COS_OFFSET) & SIN_MASK];
+        }
+    }
+
+    private static double isqrt(double n, int iterations) {
+        double xhalf = 0.5 * n;
+        long i = Double.doubleToRawLongBits(n);
+        i = 0x5FE6EB50C7B537AAL - (i >> 1);
+        n = Double.longBitsToDouble(i);
+        for (int k = 0; k < iterations; k++) {
+            n = n * (1.5 - xhalf * n * n);
+        }
+        return n;
+    }
+
+    /**
+     * Interpolates the sine table at the specified position, expressed in
+     * table entries.
+     */
+    private static double lerpSin(double position) {
+        double floor = Math.floor(position);
+        int index = (int) floor & SIN_MASK;
+        float frac = (float) (position - floor);
+        float a = SIN_TABLE[index];
+        return a + (SIN_TABLE[index + 1] - a) * frac;
+    }
+}
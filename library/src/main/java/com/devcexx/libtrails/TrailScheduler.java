@@ -0,0 +1,225 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+/**
+ * Renders many {@link EntityTrail} instances from a single repeating task,
+ * instead of registering a task per trail. The trails are kept in flat
+ * arrays, together with the number of ticks left until their next run, so
+ * each tick only runs the trails that are due, honoring the interval of each
+ * one. The backends of the trails are flushed once per tick, after all the
+ * trails have been run. A trail that fails to render is logged and stopped,
+ * so it doesn't prevent the rest of the trails from being rendered.
+ *
+ * Trails can be added and removed from any thread: the requests are queued
+ * and applied, in order, at the start of the next tick of the scheduler.
+ */
+public class TrailScheduler {
+
+    /**
+     * The plugin that owns the task of the scheduler.
+     */
+    public final Plugin plugin;
+
+    private final Queue<Runnable> requests = new ConcurrentLinkedQueue<>();
+    private final List<ParticleBackend> backends = new ArrayList<>();
+
+    private EntityTrail[] trails = new EntityTrail[16];
+    private int[] countdowns = new int[16];
+    private int size;
+    private BukkitTask task;
+
+    /**
+     * Creates a new scheduler. The scheduler doesn't render anything until
+     * {@link #start()} is called.
+     * @param plugin the plugin that will own the task of the scheduler.
+     */
+    public TrailScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Starts the task of the scheduler. If it is already started, it does
+     * nothing.
+     */
+    public synchronized void start() {
+        if (task == null) {
+            task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick,
+                    0, 1);
+        }
+    }
+
+    /**
+     * Stops the task of the scheduler and all of its trails, discarding the
+     * requests that are still queued. This method must be called from the
+     * main thread.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        requests.clear();
+        while (size > 0) {
+            trails[size - 1].stop();
+        }
+    }
+
+    /**
+     * Determines whether the task of the scheduler is started or not.
+     * @return true if it is. false otherwise.
+     */
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    /**
+     * Queues the specified trail to be rendered by this scheduler from its
+     * next tick on. This method can be called from any thread.
+     * @param trail the trail.
+     */
+    public void add(EntityTrail trail) {
+        requests.add(() -> {
+            if (trail.attach(this)) {
+                attach(trail);
+            }
+        });
+    }
+
+    /**
+     * Queues the specified trail to be stopped at the start of the next tick
+     * of this scheduler, if it is rendered by it by then. This method can be
+     * called from any thread.
+     * @param trail the trail.
+     */
+    public void remove(EntityTrail trail) {
+        requests.add(() -> {
+            if (trail.slot >= 0 && trails[trail.slot] == trail) {
+                trail.stop();
+            }
+        });
+    }
+
+    /**
+     * Returns the number of trails rendered by this scheduler, not counting
+     * the queued requests. This method must be called from the main thread.
+     * @return the number of trails.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void attach(EntityTrail trail) {
+        if (size == trails.length) {
+            int capacity = size + (size >> 1);
+            trails = Arrays.copyOf(trails, capacity);
+            countdowns = Arrays.copyOf(countdowns, capacity);
+        }
+        trails[size] = trail;
+        countdowns[size] = 0;
+        trail.slot = size++;
+    }
+
+    /**
+     * Removes the specified trail from the arrays of this scheduler, moving
+     * the last trail to its position. Called by {@link EntityTrail#stop()}.
+     */
+    void detach(EntityTrail trail) {
+        int i = trail.slot;
+        int last = --size;
+        if (i != last) {
+            trails[i] = trails[last];
+            countdowns[i] = countdowns[last];
+            trails[i].slot = i;
+        }
+        trails[last] = null;
+        trail.slot = -1;
+    }
+
+    private void tick() {
+        Runnable request;
+        while ((request = requests.poll()) != null) {
+            request.run();
+        }
+
+        try {
+            int i = 0;
+            while (i < size) {
+                EntityTrail trail = trails[i];
+                if (--countdowns[i] < 0) {
+                    countdowns[i] = trail.taskInterval - 1;
+                    render(trail);
+                }
+
+                //If the trail has stopped, the last trail has been moved to
+                //its position, so it is run on the next iteration.
+                if (trails[i] == trail) {
+                    i++;
+                }
+            }
+        } finally {
+            for (ParticleBackend backend : backends) {
+                try {
+                    backend.flush();
+                } catch (RuntimeException ex) {
+                    plugin.getLogger().log(Level.WARNING,
+                            "Failed to flush a particle backend", ex);
+                }
+            }
+            backends.clear();
+        }
+    }
+
+    /**
+     * Runs the specified trail, stopping it if it fails.
+     */
+    private void render(EntityTrail trail) {
+        try {
+            if (trail.render() && !containsBackend(trail.backend)) {
+                backends.add(trail.backend);
+            }
+        } catch (RuntimeException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to render a trail, "
+                    + "it has been stopped", ex);
+            if (!containsBackend(trail.backend)) {
+                backends.add(trail.backend);
+            }
+            trail.stop();
+        }
+    }
+
+    private boolean containsBackend(ParticleBackend backend) {
+        for (ParticleBackend b : backends) {
+            if (b == backend) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
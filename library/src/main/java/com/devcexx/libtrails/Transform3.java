@@ -0,0 +1,314 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.function.Function;
+
+/**
+ * Represents an affine transformation of the R^3 Euclidean vector space,
+ * stored as a 3x4 matrix whose first three columns are the linear part of the
+ * transformation, and whose last column is the translation. This class is
+ * immutable.
+ *
+ * Unlike composing arbitrary functions, composing two instances of this class
+ * multiplies their matrices once, so a chain of transformations costs exactly
+ * the same as a single one when applied to each point.
+ */
+public final class Transform3 implements Function<Vector3, Vector3> {
+
+    /**
+     * A final field that contains the identity transformation.
+     */
+    public static final Transform3 IDENTITY = new Transform3(
+            1, 0, 0, 0,
+            0, 1, 0, 0,
+            0, 0, 1, 0);
+
+    /**
+     * The maximum difference between the squared norm of a rotation axis and
+     * 1 for the axis to be considered already normalized.
+     */
+    private static final double UNIT_EPSILON = 1e-6;
+
+    public final float m00, m01, m02, m03;
+    public final float m10, m11, m12, m13;
+    public final float m20, m21, m22, m23;
+
+    /**
+     * Creates a new transformation from the components of its matrix, in
+     * row-major order.
+     */
+    public Transform3(float m00, float m01, float m02, float m03,
+                      float m10, float m11, float m12, float m13,
+                      float m20, float m21, float m22, float m23) {
+        this.m00 = m00; this.m01 = m01; this.m02 = m02; this.m03 = m03;
+        this.m10 = m10; this.m11 = m11; this.m12 = m12; this.m13 = m13;
+        this.m20 = m20; this.m21 = m21; this.m22 = m22; this.m23 = m23;
+    }
+
+    /**
+     * Returns a transformation that translates each point by the specified
+     * offset.
+     * @param x the x component of the offset.
+     * @param y the y component of the offset.
+     * @param z the z component of the offset.
+     * @return the translation transformation.
+     */
+    public static Transform3 translation(float x, float y, float z) {
+        return new Transform3(
+                1, 0, 0, x,
+                0, 1, 0, y,
+                0, 0, 1, z);
+    }
+
+    /**
+     * Returns a transformation that translates each point by the specified
+     * offset.
+     * @param offset the offset.
+     * @return the translation transformation.
+     */
+    public static Transform3 translation(Vector3 offset) {
+        return translation(offset.x, offset.y, offset.z);
+    }
+
+    /**
+     * Returns a transformation that scales each point by the specified factor.
+     * @param factor the scale factor.
+     * @return the scale transformation.
+     */
+    public static Transform3 scaling(float factor) {
+        return scaling(factor, factor, factor);
+    }
+
+    /**
+     * Returns a transformation that multiplies each component of each point
+     * by its corresponding specified factor.
+     * @param fx the x factor.
+     * @param fy the y factor.
+     * @param fz the z factor.
+     * @return the scale transformation.
+     */
+    public static Transform3 scaling(float fx, float fy, float fz) {
+        return new Transform3(
+                fx, 0, 0, 0,
+                0, fy, 0, 0,
+                0, 0, fz, 0);
+    }
+
+    /**
+     * Returns a transformation that rotates each point around an arbitrary
+     * axis, in the same way as {@link Vector3#rotate(Vector3, float)} does.
+     * The sine and cosine of the angle are only computed here, so the
+     * transformation should be built once and then applied to as many points
+     * as needed.
+     * @param k the rotation axis. It doesn't need to be normalized.
+     * @param angle the rotation angle, in radians.
+     * @return the rotation transformation.
+     * @throws IllegalArgumentException if the axis is the zero vector.
+     */
+    public static Transform3 rotation(Vector3 k, float angle) {
+        float kx = k.x, ky = k.y, kz = k.z;
+        double normSquared = k.normSquared();
+        if (Math.abs(normSquared - 1) > UNIT_EPSILON) {
+            if (normSquared == 0)
+                throw new IllegalArgumentException("The rotation axis " +
+                        "cannot be the zero vector");
+
+            float norm = (float) TrailMath.sqrt(normSquared);
+            kx /= norm;
+            ky /= norm;
+            kz /= norm;
+        }
+
+        float cos = (float) TrailMath.cos(angle);
+        float sin = (float) TrailMath.sin(angle);
+        float t = 1 - cos;
+
+        //Rodrigues' rotation formula in matrix form:
+        //R = cos * I + sin * [k]x + (1 - cos) * k * k^T
+        return new Transform3(
+                cos + kx * kx * t, kx * ky * t - kz * sin,
+                kx * kz * t + ky * sin, 0,
+                ky * kx * t + kz * sin, cos + ky * ky * t,
+                ky * kz * t - kx * sin, 0,
+                kz * kx * t - ky * sin, kz * ky * t + kx * sin,
+                cos + kz * kz * t, 0);
+    }
+
+    /**
+     * Returns a transformation that rotates each point around the X axis of
+     * the canonical base.
+     * @param angle the rotation angle, in radians.
+     * @return the rotation transformation.
+     */
+    public static Transform3 rotationX(float angle) {
+        float cos = (float) TrailMath.cos(angle);
+        float sin = (float) TrailMath.sin(angle);
+        return new Transform3(
+                1, 0, 0, 0,
+                0, cos, -sin, 0,
+                0, sin, cos, 0);
+    }
+
+    /**
+     * Returns a transformation that rotates each point around the Y axis of
+     * the canonical base.
+     * @param angle the rotation angle, in radians.
+     * @return the rotation transformation.
+     */
+    public static Transform3 rotationY(float angle) {
+        float cos = (float) TrailMath.cos(angle);
+        float sin = (float) TrailMath.sin(angle);
+        return new Transform3(
+                cos, 0, sin, 0,
+                0, 1, 0, 0,
+                -sin, 0, cos, 0);
+    }
+
+    /**
+     * Returns a transformation that rotates each point around the Z axis of
+     * the canonical base.
+     * @param angle the rotation angle, in radians.
+     * @return the rotation transformation.
+     */
+    public static Transform3 rotationZ(float angle) {
+        float cos = (float) TrailMath.cos(angle);
+        float sin = (float) TrailMath.sin(angle);
+        return new Transform3(
+                cos, -sin, 0, 0,
+                sin, cos, 0, 0,
+                0, 0, 1, 0);
+    }
+
+    /**
+     * Returns the transformation that results of applying first the current
+     * transformation, and then the specified one.
+     * @param after the transformation applied after the current one.
+     * @return the composed transformation.
+     */
+    public Transform3 andThen(Transform3 after) {
+        return multiply(after, this);
+    }
+
+    /**
+     * Returns the transformation that results of applying first the specified
+     * transformation, and then the current one.
+     * @param before the transformation applied before the current one.
+     * @return the composed transformation.
+     */
+    public Transform3 compose(Transform3 before) {
+        return multiply(this, before);
+    }
+
+    /**
+     * Returns the product of two affine matrices, this is, the transformation
+     * that applies first {@code b} and then {@code a}.
+     */
+    private static Transform3 multiply(Transform3 a, Transform3 b) {
+        return new Transform3(
+                a.m00 * b.m00 + a.m01 * b.m10 + a.m02 * b.m20,
+                a.m00 * b.m01 + a.m01 * b.m11 + a.m02 * b.m21,
+                a.m00 * b.m02 + a.m01 * b.m12 + a.m02 * b.m22,
+                a.m00 * b.m03 + a.m01 * b.m13 + a.m02 * b.m23 + a.m03,
+
+                a.m10 * b.m00 + a.m11 * b.m10 + a.m12 * b.m20,
+                a.m10 * b.m01 + a.m11 * b.m11 + a.m12 * b.m21,
+                a.m10 * b.m02 + a.m11 * b.m12 + a.m12 * b.m22,
+                a.m10 * b.m03 + a.m11 * b.m13 + a.m12 * b.m23 + a.m13,
+
+                a.m20 * b.m00 + a.m21 * b.m10 + a.m22 * b.m20,
+                a.m20 * b.m01 + a.m21 * b.m11 + a.m22 * b.m21,
+                a.m20 * b.m02 + a.m21 * b.m12 + a.m22 * b.m22,
+                a.m20 * b.m03 + a.m21 * b.m13 + a.m22 * b.m23 + a.m23);
+    }
+
+    /**
+     * Applies this transformation to the specified vector.
+     * @param v the vector.
+     * @return a new vector with the result of the transformation.
+     */
+    @Override
+    public Vector3 apply(Vector3 v) {
+        return new Vector3(applyX(v.x, v.y, v.z), applyY(v.x, v.y, v.z),
+                applyZ(v.x, v.y, v.z));
+    }
+
+    /**
+     * Returns the x component of the result of applying this transformation to
+     * the specified point.
+     * @param x the x component of the point.
+     * @param y the y component of the point.
+     * @param z the z component of the point.
+     * @return the x component of the transformed point.
+     */
+    public float applyX(float x, float y, float z) {
+        return m00 * x + m01 * y + m02 * z + m03;
+    }
+
+    /**
+     * Returns the y component of the result of applying this transformation to
+     * the specified point.
+     * @param x the x component of the point.
+     * @param y the y component of the point.
+     * @param z the z component of the point.
+     * @return the y component of the transformed point.
+     */
+    public float applyY(float x, float y, float z) {
+        return m10 * x + m11 * y + m12 * z + m13;
+    }
+
+    /**
+     * Returns the z component of the result of applying this transformation to
+     * the specified point.
+     * @param x the x component of the point.
+     * @param y the y component of the point.
+     * @param z the z component of the point.
+     * @return the z component of the transformed point.
+     */
+    public float applyZ(float x, float y, float z) {
+        return m20 * x + m21 * y + m22 * z + m23;
+    }
+
+    /**
+     * Applies this transformation, in place, to the first {@code n} points
+     * whose components are stored in the specified arrays.
+     * @param xs the x components of the points.
+     * @param ys the y components of the points.
+     * @param zs the z components of the points.
+     * @param n the number of points to transform.
+     */
+    public void apply(float[] xs, float[] ys, float[] zs, int n) {
+        FrameKernels.affine(this, xs, ys, zs, n);
+    }
+
+    /**
+     * Applies this transformation, in place, to all the particles stored in
+     * the specified buffer.
+     * @param buffer the buffer.
+     */
+    public void apply(ParticleBuffer buffer) {
+        apply(buffer.xs(), buffer.ys(), buffer.zs(), buffer.size());
+    }
+
+    @Override
+    public String toString() {
+        return "Transform3[" +
+                m00 + ", " + m01 + ", " + m02 + ", " + m03 + "; " +
+                m10 + ", " + m11 + ", " + m12 + ", " + m13 + "; " +
+                m20 + ", " + m21 + ", " + m22 + ", " + m23 + "]";
+    }
+}
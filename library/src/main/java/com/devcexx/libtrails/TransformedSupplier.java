@@ -0,0 +1,554 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A {@link ParticleSupplier} that applies a chain of operators over the output
+ * of another supplier. This class is created by the transformation methods of
+ * {@link ParticleSupplier}, such as {@link ParticleSupplier#translate(Function)}
+ * or {@link ParticleSupplier#transformParticles(BiFunction)}, and it is fused
+ * as the chain grows:
+ * <ul>
+ *     <li>Consecutive affine operators (translations, scales, rotations and
+ *     {@link Transform3} instances) are collapsed into a single matrix, which
+ *     is computed once per tick.</li>
+ *     <li>Consecutive particle and vector functions are composed into a
+ *     single function.</li>
+ * </ul>
+ * The resulting chain is evaluated in a single pass over the frame of the
+ * source supplier. When the frame is pushed into a {@link ParticleBuffer},
+ * the trailing affine operators, and any {@link FrameTransformer} of the
+ * chain and the operators that follow it, are applied in place over the whole
+ * frame once it has been written into the buffer. The chain can be inspected
+ * through {@link #getSource()} and {@link #getOperators()}.
+ */
+public final class TransformedSupplier implements ParticleSupplier {
+
+    private final ParticleSupplier source;
+    private final Operator[] operators;
+    private final int firstFrameOperator;
+    private Map<ParticleSupplier, TransformedSupplier> levels;
+
+    private TransformedSupplier(ParticleSupplier source, Operator[] operators) {
+        this.source = source;
+        this.operators = operators;
+
+        int first = 0;
+        while (first < operators.length
+                && !(operators[first] instanceof FrameOperator)) {
+            first++;
+        }
+        this.firstFrameOperator = first;
+    }
+
+    /**
+     * Returns a supplier that applies the specified operator over the output
+     * of the specified supplier. If the supplier is already an instance of
+     * this class, the operator is appended to its chain, and fused with its
+     * last operator if possible.
+     * @param supplier the source supplier.
+     * @param operator the operator to append.
+     * @return the transformed supplier.
+     */
+    public static TransformedSupplier append(ParticleSupplier supplier,
+                                             Operator operator) {
+        if (!(supplier instanceof TransformedSupplier)) {
+            return new TransformedSupplier(supplier,
+                    new Operator[] { operator });
+        }
+
+        TransformedSupplier ts = (TransformedSupplier) supplier;
+        Operator[] ops = ts.operators;
+        Operator fused = ops[ops.length - 1].fuse(operator);
+        if (fused != null) {
+            ops = ops.clone();
+            ops[ops.length - 1] = fused;
+        } else {
+            ops = Arrays.copyOf(ops, ops.length + 1);
+            ops[ops.length - 1] = operator;
+        }
+        return new TransformedSupplier(ts.source, ops);
+    }
+
+    /**
+     * Returns the supplier whose output is transformed by this one.
+     * @return the source supplier.
+     */
+    public ParticleSupplier getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the operators applied over the output of the source supplier,
+     * after being fused, in the order they are applied.
+     * @return an unmodifiable list with the operators of this supplier.
+     */
+    public List<Operator> getOperators() {
+        return Collections.unmodifiableList(Arrays.asList(operators));
+    }
+
+    /**
+     * Evaluates the affine operators of the chain for the specified tick.
+     * The entries of the returned array that correspond to non affine
+     * operators are null.
+     */
+    Transform3[] bind(int tick) {
+        Transform3[] transforms = new Transform3[operators.length];
+        for (int i = 0; i < operators.length; i++) {
+            if (operators[i] instanceof AffineOperator) {
+                transforms[i] = ((AffineOperator) operators[i]).at(tick);
+            }
+        }
+        return transforms;
+    }
+
+    /**
+     * Determines whether the chain contains any {@link FrameOperator}, in
+     * which case it can only be evaluated over whole frames.
+     */
+    boolean hasFrameOperators() {
+        return firstFrameOperator < operators.length;
+    }
+
+    /**
+     * Returns the index of the first operator of the chain that is applied
+     * over the whole frame, once it has been written into a buffer, or the
+     * number of operators if none is.
+     */
+    private int bulkStart(Transform3[] transforms) {
+        int start = firstFrameOperator;
+        while (start > 0 && transforms[start - 1] != null) {
+            start--;
+        }
+        return start;
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        if (hasFrameOperators()) {
+            ParticleBuffer out = new ParticleBuffer();
+            supplyInto(tick, out);
+            return out.stream();
+        }
+
+        Transform3[] transforms = bind(tick);
+        return source.supply(tick).map(p -> {
+            for (int i = 0; i < operators.length; i++) {
+                Operator op = operators[i];
+                if (transforms[i] != null) {
+                    p = p.with(transforms[i].apply(p.position));
+                } else if (op instanceof VectorOperator) {
+                    p = p.with(((VectorOperator) op).function
+                            .apply(p.position));
+                } else {
+                    p = ((ParticleOperator) op).function.apply(p, tick);
+                }
+            }
+            return p;
+        });
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        Transform3[] transforms = bind(tick);
+        int bulk = bulkStart(transforms);
+        if (bulk < operators.length
+                && (sink instanceof ParticleBuffer || hasFrameOperators())) {
+            //The frame is written into a buffer through the first operators
+            //of the chain, and the rest of them are then applied to the
+            //whole frame at once.
+            ParticleBuffer buffer = sink instanceof ParticleBuffer
+                    ? (ParticleBuffer) sink : new ParticleBuffer();
+            int from = buffer.size();
+            if (bulk == 0) {
+                source.supplyInto(tick, buffer);
+            } else {
+                source.supplyInto(tick, (p, x, y, z) ->
+                        emit(transforms, bulk, tick, buffer, p, x, y, z));
+            }
+            for (int i = bulk; i < operators.length; i++) {
+                apply(operators[i], transforms[i], tick, buffer, from);
+            }
+            if (buffer != sink) {
+                buffer.forEach(sink);
+            }
+        } else if (operators.length == 1 && transforms[0] != null) {
+            Transform3 t = transforms[0];
+            source.supplyInto(tick, (p, x, y, z) -> sink.accept(p,
+                    t.applyX(x, y, z), t.applyY(x, y, z), t.applyZ(x, y, z)));
+        } else {
+            source.supplyInto(tick, (p, x, y, z) ->
+                    emit(transforms, tick, sink, p, x, y, z));
+        }
+    }
+
+    /**
+     * Applies an operator, bound to the specified tick, in place, to the
+     * particles of the buffer from the specified index.
+     */
+    private static void apply(Operator op, Transform3 t, int tick,
+                              ParticleBuffer buffer, int from) {
+        int to = buffer.size();
+        if (t != null) {
+            FrameKernels.affine(t, buffer.xs(), buffer.ys(), buffer.zs(),
+                    from, to);
+        } else if (op instanceof FrameOperator) {
+            ((FrameOperator) op).transformer.transform(buffer, from, to,
+                    tick);
+        } else if (op instanceof VectorOperator) {
+            Function<Vector3, Vector3> f = ((VectorOperator) op).function;
+            for (int i = from; i < to; i++) {
+                Vector3 v = f.apply(new Vector3(buffer.x(i), buffer.y(i),
+                        buffer.z(i)));
+                buffer.set(i, v.x, v.y, v.z);
+            }
+        } else {
+            BiFunction<SuppliedParticle, Integer, SuppliedParticle> f =
+                    ((ParticleOperator) op).function;
+            for (int i = from; i < to; i++) {
+                SuppliedParticle r = f.apply(new SuppliedParticle(
+                        buffer.particle(i), new Vector3(buffer.x(i),
+                        buffer.y(i), buffer.z(i))), tick);
+                buffer.set(i, r.particle, r.position.x, r.position.y,
+                        r.position.z);
+            }
+        }
+    }
+
+    /**
+     * Applies the chain of operators, bound to the specified tick, to a
+     * single particle, and pushes the result into the specified sink. The
+     * chain must not contain any {@link FrameOperator}.
+     */
+    void emit(Transform3[] transforms, int tick, ParticleSink sink,
+              Particle p, float x, float y, float z) {
+        emit(transforms, operators.length, tick, sink, p, x, y, z);
+    }
+
+    /**
+     * Applies the first {@code count} operators of the chain to a single
+     * particle, and pushes the result into the specified sink.
+     */
+    private void emit(Transform3[] transforms, int count, int tick,
+                      ParticleSink sink, Particle p, float x, float y,
+                      float z) {
+        for (int i = 0; i < count; i++) {
+            Operator op = operators[i];
+            Transform3 t = transforms[i];
+            if (t != null) {
+                float nx = t.applyX(x, y, z);
+                float ny = t.applyY(x, y, z);
+                float nz = t.applyZ(x, y, z);
+                x = nx;
+                y = ny;
+                z = nz;
+            } else if (op instanceof VectorOperator) {
+                Vector3 v = ((VectorOperator) op).function
+                        .apply(new Vector3(x, y, z));
+                x = v.x;
+                y = v.y;
+                z = v.z;
+            } else {
+                SuppliedParticle r = ((ParticleOperator) op).function.apply(
+                        new SuppliedParticle(p, new Vector3(x, y, z)), tick);
+                p = r.particle;
+                x = r.position.x;
+                y = r.position.y;
+                z = r.position.z;
+            }
+        }
+        sink.accept(p, x, y, z);
+    }
+
+    @Override
+    public int levelsOfDetail() {
+        return source.levelsOfDetail();
+    }
+
+    /**
+     * Returns the level of detail of the source supplier for the specified
+     * distance, transformed by the operators of this supplier. The supplier
+     * created for each level is kept, so viewers that see the same level get
+     * the same instance.
+     */
+    @Override
+    public synchronized ParticleSupplier atDistance(double distance) {
+        ParticleSupplier level = source.atDistance(distance);
+        if (level == source) {
+            return this;
+        }
+        if (levels == null) {
+            levels = new IdentityHashMap<>();
+        }
+        return levels.computeIfAbsent(level,
+                l -> new TransformedSupplier(l, operators));
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return source.isActive(tick);
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return source.nextActiveTick(tick);
+    }
+
+    @Override
+    public int period() {
+        for (Operator op : operators) {
+            if (op.dependsOnTick()) {
+                return 0;
+            }
+        }
+        return source.period();
+    }
+
+    @Override
+    public String toString() {
+        return "TransformedSupplier[source=" + source + ", operators="
+                + Arrays.toString(operators) + "]";
+    }
+
+    /**
+     * An operator of a {@link TransformedSupplier}.
+     */
+    public abstract static class Operator {
+
+        Operator() {
+        }
+
+        /**
+         * Determines whether the result of this operator depends on the tick
+         * or not.
+         * @return true if the operator depends on the tick. false otherwise.
+         */
+        public abstract boolean dependsOnTick();
+
+        /**
+         * Returns an operator equivalent to applying this operator and then
+         * the specified one, or null if they cannot be fused.
+         */
+        abstract Operator fuse(Operator next);
+    }
+
+    /**
+     * An operator that applies an affine transformation, that may depend on
+     * the tick, to the position of each particle.
+     */
+    public static final class AffineOperator extends Operator {
+
+        /**
+         * The transformation, if it doesn't depend on the tick. Null
+         * otherwise.
+         */
+        public final Transform3 constant;
+
+        /**
+         * The function that returns the transformation for each tick.
+         */
+        public final Function<Integer, Transform3> function;
+
+        /**
+         * Creates a new operator that applies the same transformation on
+         * every tick.
+         * @param transform the transformation.
+         */
+        public AffineOperator(Transform3 transform) {
+            this.constant = transform;
+            this.function = t -> transform;
+        }
+
+        /**
+         * Creates a new operator whose transformation depends on the tick.
+         * The function is evaluated once per tick.
+         * @param function the function that returns the transformation for
+         *                 each tick.
+         */
+        public AffineOperator(Function<Integer, Transform3> function) {
+            this.constant = null;
+            this.function = function;
+        }
+
+        /**
+         * Returns the transformation of this operator at the specified tick.
+         * @param tick the tick.
+         * @return the transformation at that tick.
+         */
+        public Transform3 at(int tick) {
+            return constant != null ? constant : function.apply(tick);
+        }
+
+        @Override
+        public boolean dependsOnTick() {
+            return constant == null;
+        }
+
+        @Override
+        Operator fuse(Operator next) {
+            if (!(next instanceof AffineOperator)) {
+                return null;
+            }
+
+            AffineOperator a = this;
+            AffineOperator b = (AffineOperator) next;
+            if (a.constant != null && b.constant != null) {
+                return new AffineOperator(a.constant.andThen(b.constant));
+            }
+            return new AffineOperator(t -> a.at(t).andThen(b.at(t)));
+        }
+
+        @Override
+        public String toString() {
+            return constant != null ? "Affine[" + constant + "]"
+                    : "Affine[per tick]";
+        }
+    }
+
+    /**
+     * An operator that applies an arbitrary function to the position of
+     * each particle.
+     */
+    public static final class VectorOperator extends Operator {
+
+        /**
+         * The function applied to each position.
+         */
+        public final Function<Vector3, Vector3> function;
+
+        /**
+         * Creates a new operator.
+         * @param function the function applied to each position.
+         */
+        public VectorOperator(Function<Vector3, Vector3> function) {
+            this.function = function;
+        }
+
+        @Override
+        public boolean dependsOnTick() {
+            return false;
+        }
+
+        @Override
+        Operator fuse(Operator next) {
+            if (next instanceof VectorOperator) {
+                return new VectorOperator(function.andThen(
+                        ((VectorOperator) next).function));
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Vector";
+        }
+    }
+
+    /**
+     * An operator that applies a {@link FrameTransformer} to each frame.
+     */
+    public static final class FrameOperator extends Operator {
+
+        /**
+         * The transformer applied to each frame.
+         */
+        public final FrameTransformer transformer;
+
+        /**
+         * Creates a new operator.
+         * @param transformer the transformer applied to each frame.
+         */
+        public FrameOperator(FrameTransformer transformer) {
+            this.transformer = transformer;
+        }
+
+        @Override
+        public boolean dependsOnTick() {
+            return true;
+        }
+
+        @Override
+        Operator fuse(Operator next) {
+            if (next instanceof FrameOperator) {
+                FrameTransformer g = ((FrameOperator) next).transformer;
+                return new FrameOperator((frame, from, to, tick) -> {
+                    transformer.transform(frame, from, to, tick);
+                    g.transform(frame, from, to, tick);
+                });
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Frame";
+        }
+    }
+
+    /**
+     * An operator that applies an arbitrary function, that may depend on the
+     * tick, to each particle.
+     */
+    public static final class ParticleOperator extends Operator {
+
+        /**
+         * The function applied to each particle.
+         */
+        public final BiFunction<SuppliedParticle, Integer,
+                SuppliedParticle> function;
+
+        /**
+         * Creates a new operator.
+         * @param function the function applied to each particle, that takes
+         *                 the particle and the tick.
+         */
+        public ParticleOperator(BiFunction<SuppliedParticle, Integer,
+                SuppliedParticle> function) {
+            this.function = function;
+        }
+
+        @Override
+        public boolean dependsOnTick() {
+            return true;
+        }
+
+        @Override
+        Operator fuse(Operator next) {
+            if (next instanceof ParticleOperator) {
+                BiFunction<SuppliedParticle, Integer, SuppliedParticle> g =
+                        ((ParticleOperator) next).function;
+                return new ParticleOperator((p, t) ->
+                        g.apply(function.apply(p, t), t));
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "Particle";
+        }
+    }
+}
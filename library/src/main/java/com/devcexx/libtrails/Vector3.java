@@ -359,7 +359,7 @@ public class Vector3 {
      * @return the norm of the current vector.
      */
     public double norm(){
-        return (float) TrailUtil.sqrt(normSquared());
+        return (float) TrailMath.sqrt(normSquared());
     }
 
     /**
@@ -384,7 +384,7 @@ public class Vector3 {
      * specified one.
      */
     public double distance(Vector3 o){
-        return TrailUtil.sqrt(distanceSquared(o));
+        return TrailMath.sqrt(distanceSquared(o));
     }
 
     /**
@@ -462,7 +462,7 @@ public class Vector3 {
      * radians.
      */
     public Vector3 rotateX(float angle){
-        return rotate(AXIS_X, angle);
+        return Transform3.rotationX(angle).apply(this);
     }
 
     /**
@@ -472,7 +472,7 @@ public class Vector3 {
      * radians.
      */
     public Vector3 rotateY(float angle){
-        return rotate(AXIS_Y, angle);
+        return Transform3.rotationY(angle).apply(this);
     }
 
     /**
@@ -482,7 +482,7 @@ public class Vector3 {
      * radians.
      */
     public Vector3 rotateZ(float angle){
-        return rotate(AXIS_Z, angle);
+        return Transform3.rotationZ(angle).apply(this);
     }
 
     /**
@@ -492,23 +492,10 @@ public class Vector3 {
      * @param angle the rotation angle, in radians.
      * @return the current vector rotated around the {@code k} axis,
      * {@code angle} radians.
+     * @throws IllegalArgumentException if the axis is the zero vector.
      */
     public Vector3 rotate(Vector3 k, float angle){
-        if (k.normSquared() != 1){
-            k = k.normalize();
-        }
-
-        float cos = (float) Math.cos(angle);
-        float sin = (float) Math.sin(angle);
-
-        Vector3 cross = k.cross(this);
-        float kfactor = k.dot(this) * (1 - cos);
-
-        return new Vector3(
-                this.x * cos + cross.x * sin + k.x * kfactor,
-                this.y * cos + cross.y * sin + k.y * kfactor,
-                this.z * cos + cross.z * sin + k.z * kfactor
-        );
+        return Transform3.rotation(k, angle).apply(this);
     }
 
     /**
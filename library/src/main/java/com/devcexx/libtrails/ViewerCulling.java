@@ -0,0 +1,198 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Class that determines which players can see a frame of particles, so the
+ * frame is only sent to them, instead of letting the server check each
+ * particle against every player of the world. The check is done once per
+ * frame, against the bounding sphere of the frame enlarged by the visibility
+ * radius of its particles, so a player is a candidate viewer if they are
+ * near enough to see at least one of the particles of the frame.
+ *
+ * Optionally, the players that are not looking towards the frame can be
+ * discarded too. This is disabled by default, since particles live for some
+ * time after being spawned, and the players may turn around meanwhile.
+ */
+public class ViewerCulling {
+
+    /**
+     * The half angle of the view cone of the players, in radians. Frames
+     * outside of the cone are not sent. If it is greater or equal to
+     * {@link Math#PI}, the view cone is not checked.
+     */
+    public final double viewConeAngle;
+
+    /**
+     * Creates a new culling stage that only checks the distance of the
+     * players to the frame.
+     */
+    public ViewerCulling() {
+        this(Math.PI);
+    }
+
+    /**
+     * Creates a new culling stage that checks both the distance and the view
+     * cone of the players.
+     * @param viewConeAngle the half angle of the view cone of the players,
+     *                      in radians.
+     */
+    public ViewerCulling(double viewConeAngle) {
+        if (!(viewConeAngle > 0))
+            throw new IllegalArgumentException("The view cone angle must be " +
+                    "positive");
+
+        this.viewConeAngle = viewConeAngle;
+    }
+
+    /**
+     * Returns the players of the specified world that can see any particle of
+     * the specified frame.
+     * @param world the world where the frame is spawned.
+     * @param frame the frame, in world coordinates.
+     * @return the candidate viewers of the frame.
+     */
+    public List<Player> viewers(World world, ParticleBuffer frame) {
+        return viewers(world.getPlayers(), frame);
+    }
+
+    /**
+     * Returns the players of the specified ones that can see any particle of
+     * the specified frame.
+     * @param candidates the players to check.
+     * @param frame the frame, in world coordinates.
+     * @return the candidate viewers of the frame.
+     */
+    public List<Player> viewers(Collection<? extends Player> candidates,
+                                ParticleBuffer frame) {
+        List<Player> viewers = new ArrayList<>();
+        if (frame.isEmpty()) {
+            return viewers;
+        }
+
+        float[] sphere = boundingSphere(frame);
+        for (Player player : candidates) {
+            if (canSee(player, sphere)) {
+                viewers.add(player);
+            }
+        }
+        return viewers;
+    }
+
+    /**
+     * Determines whether the specified player can see any particle of the
+     * specified frame.
+     * @param player the player.
+     * @param frame the frame, in world coordinates.
+     * @return true if the player is a candidate viewer of the frame. false
+     * otherwise.
+     */
+    public boolean canSee(Player player, ParticleBuffer frame) {
+        return !frame.isEmpty() && canSee(player, boundingSphere(frame));
+    }
+
+    private boolean canSee(Player player, float[] sphere) {
+        //The distance is measured from the feet of the player, as the server
+        //and PacketParticleBackend do, so the same players are reached.
+        Location feet = player.getLocation();
+        double fx = sphere[0] - feet.getX();
+        double fy = sphere[1] - feet.getY();
+        double fz = sphere[2] - feet.getZ();
+        double radius = sphere[3];
+
+        if (Math.sqrt(fx * fx + fy * fy + fz * fz) - radius > sphere[4]) {
+            return false;
+        }
+        if (viewConeAngle >= Math.PI) {
+            return true;
+        }
+
+        //The sphere is visible if the angle between the view direction and
+        //its center is smaller than the cone angle plus the angular radius
+        //of the sphere.
+        Location eye = player.getEyeLocation();
+        double dx = sphere[0] - eye.getX();
+        double dy = sphere[1] - eye.getY();
+        double dz = sphere[2] - eye.getZ();
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance <= radius) {
+            return true;
+        }
+
+        Vector3 look = Vector3.from(eye.getDirection());
+        double cos = (look.x * dx + look.y * dy + look.z * dz)
+                / (distance * look.norm());
+        double angle = Math.acos(Math.max(-1, Math.min(1, cos)));
+        return angle <= viewConeAngle + Math.asin(radius / distance);
+    }
+
+    /**
+     * Returns the bounding sphere of the frame, as its center, its radius
+     * and the maximum visibility radius of its particles. The palette of a
+     * reused buffer may contain particles of previous frames, which can only
+     * make the result more conservative.
+     */
+    private static float[] boundingSphere(ParticleBuffer frame) {
+        int n = frame.size();
+        float[] xs = frame.xs();
+        float[] ys = frame.ys();
+        float[] zs = frame.zs();
+
+        float minX = xs[0];
+        float minY = ys[0];
+        float minZ = zs[0];
+        float maxX = minX;
+        float maxY = minY;
+        float maxZ = minZ;
+        for (int i = 1; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            minZ = Math.min(minZ, zs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+            maxZ = Math.max(maxZ, zs[i]);
+        }
+
+        float cx = (minX + maxX) / 2;
+        float cy = (minY + maxY) / 2;
+        float cz = (minZ + maxZ) / 2;
+        float radiusSq = 0;
+        for (int i = 0; i < n; i++) {
+            float dx = xs[i] - cx;
+            float dy = ys[i] - cy;
+            float dz = zs[i] - cz;
+            radiusSq = Math.max(radiusSq, dx * dx + dy * dy + dz * dz);
+        }
+
+        int visibility = 0;
+        for (int i = 0; i < frame.paletteSize(); i++) {
+            visibility = Math.max(visibility,
+                    frame.paletteEntry(i).getRadius());
+        }
+        return new float[] {
+                cx, cy, cz, (float) Math.sqrt(radiusSq), visibility
+        };
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails.suppliers;
+
+import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleSink;
+import com.devcexx.libtrails.ParticleSupplier;
+import com.devcexx.libtrails.SuppliedParticle;
+import com.devcexx.libtrails.Vector3;
+import org.bukkit.Effect;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Class that allows to render an animation, made of a sequence of images, with
+ * coloreable particles in Minecraft. The frames are not kept in memory:
+ * they are encoded once in a frame file with {@link #encode(Path, Iterable,
+ * int, int, ScalingFilter)}, which is then mapped into memory, in windows of
+ * 1 GiB, so the operating system loads its pages as they are needed, and
+ * files bigger than 2 GiB can be played. The next frames of the animation are
+ * read ahead asynchronously, so they are usually loaded before they are
+ * rendered.
+ *
+ * The frame file starts with a header with the following fields, in big
+ * endian:
+ * <ul>
+ *     <li>The magic number {@code 0x4C544146} (LTAF).</li>
+ *     <li>The version of the format, which is 1.</li>
+ *     <li>The width and the height, in pixels, of the frames.</li>
+ *     <li>The number of frames.</li>
+ *     <li>The position of the frame table, as a long.</li>
+ * </ul>
+ * Each frame is made of its number of visible pixels, followed by the
+ * pixels themselves, each one written as its position in the frame
+ * ({@code y * width + x}) as an int and its RGB color as three bytes. The
+ * frame table, at the end of the file, contains the position of each frame
+ * and the position of the end of the last frame, as longs. The layout of the
+ * frames is validated when the file is opened.
+ */
+public class AnimatedBitmapSupplier implements ParticleSupplier {
+
+    /**
+     * The magic number of the frame files.
+     */
+    public static final int MAGIC = 0x4C544146;
+
+    /**
+     * The version of the format of the frame files written by this class.
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 28;
+    private static final int PIXEL_SIZE = 7;
+    private static final int PAGE_SIZE = 4096;
+    private static final int PARTICLE_CACHE_SIZE = 4096;
+    private static final int WINDOW_SHIFT = 30;
+    private static final int WINDOW_SIZE = 1 << WINDOW_SHIFT;
+
+    //Shared by the suppliers that are not given an executor. Its only thread
+    //dies when it has been idle for a while, so it doesn't outlive the
+    //plugin that loaded this class.
+    private static final ThreadPoolExecutor READ_AHEAD_EXECUTOR;
+
+    static {
+        READ_AHEAD_EXECUTOR = new ThreadPoolExecutor(1, 1, 10,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "libtrails-read-ahead");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        READ_AHEAD_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    public final int frameCount;
+    public final int ticksPerFrame;
+    public final int appearingInterval;
+    public final int readAhead;
+
+    private final Effect particleType;
+    private final int visibilityRadius;
+    private final MappedByteBuffer[] windows;
+    private final Executor executor;
+    private final long[] frameOffsets;
+    private final int width;
+    private final float[] columns;
+    private final float[] rows;
+
+    //A direct mapped cache of the particle of each color, so each color is
+    //only built once, while the memory used by the cache stays bounded.
+    private final CachedParticle[] particleCache =
+            new CachedParticle[PARTICLE_CACHE_SIZE];
+
+    private final AtomicInteger lastFrame = new AtomicInteger(-1);
+    private volatile int touched;
+
+    /**
+     * Creates a new animated supplier from a frame file, whose frames are read
+     * ahead in a thread shared by all the animated suppliers.
+     * @param particleType the type of the particle that will be spawned. MUST
+     *                     BE a coloreable particle, (COLORED_DUST or SPELL).
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each image.
+     * @param visibilityRadius the visible radius of the particles. Anyone
+     *                         in the same world as the particles, and nearer
+     *                         than this value will be able to see them.
+     * @param file the frame file, created with {@link #encode(Path, Iterable,
+     *             int, int, ScalingFilter)}.
+     * @param w the width, in Minecraft Blocks of the rendered image.
+     * @param h the height, in Minecraft Blocks of the rendered image.
+     * @param ticksPerFrame the number of ticks each frame lasts.
+     * @param readAhead the number of frames that are loaded in advance, or 0
+     *                  to disable read ahead.
+     * @throws IOException if the file cannot be read or is not a valid frame
+     * file.
+     */
+    public AnimatedBitmapSupplier(Effect particleType, int appearingInterval,
+                                  int visibilityRadius, Path file, float w,
+                                  float h, int ticksPerFrame, int readAhead)
+            throws IOException {
+        this(particleType, appearingInterval, visibilityRadius, file, w, h,
+                ticksPerFrame, readAhead, READ_AHEAD_EXECUTOR);
+    }
+
+    /**
+     * Creates a new animated supplier from a frame file.
+     * @param particleType the type of the particle that will be spawned. MUST
+     *                     BE a coloreable particle, (COLORED_DUST or SPELL).
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each image.
+     * @param visibilityRadius the visible radius of the particles. Anyone
+     *                         in the same world as the particles, and nearer
+     *                         than this value will be able to see them.
+     * @param file the frame file, created with {@link #encode(Path, Iterable,
+     *             int, int, ScalingFilter)}.
+     * @param w the width, in Minecraft Blocks of the rendered image.
+     * @param h the height, in Minecraft Blocks of the rendered image.
+     * @param ticksPerFrame the number of ticks each frame lasts.
+     * @param readAhead the number of frames that are loaded in advance, or 0
+     *                  to disable read ahead.
+     * @param executor the executor where the frames are read ahead, usually
+     *                 the {@link com.devcexx.libtrails.EntityTrail#executor}
+     *                 of the trail that renders this supplier.
+     * @throws IOException if the file cannot be read or is not a valid frame
+     * file.
+     */
+    public AnimatedBitmapSupplier(Effect particleType, int appearingInterval,
+                                  int visibilityRadius, Path file, float w,
+                                  float h, int ticksPerFrame, int readAhead,
+                                  Executor executor)
+            throws IOException {
+
+        if (particleType != Effect.COLOURED_DUST
+                && particleType != Effect.SPELL)
+            throw new IllegalArgumentException("The specified effect " +
+                    "cannot have RGB colors");
+        if (ticksPerFrame <= 0)
+            throw new IllegalArgumentException("The number of ticks per " +
+                    "frame must be positive");
+
+        this.particleType = particleType;
+        this.appearingInterval = appearingInterval;
+        this.visibilityRadius = visibilityRadius;
+        this.ticksPerFrame = ticksPerFrame;
+        this.readAhead = Math.max(0, readAhead);
+        this.executor = executor;
+
+        long size;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            size = channel.size();
+            windows = new MappedByteBuffer[
+                    (int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+            for (int i = 0; i < windows.length; i++) {
+                long start = (long) i << WINDOW_SHIFT;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(WINDOW_SIZE, size - start));
+            }
+        }
+
+        if (size < HEADER_SIZE || getInt(0) != MAGIC)
+            throw new IOException("Not a frame file");
+        if (getInt(4) != VERSION)
+            throw new IOException("Unsupported frame file version: "
+                    + getInt(4));
+
+        this.width = getInt(8);
+        int height = getInt(12);
+        this.frameCount = getInt(16);
+        long table = getLong(20);
+        if (frameCount <= 0 || table < HEADER_SIZE
+                || table + (frameCount + 1) * 8L > size)
+            throw new IOException("Corrupted frame file");
+
+        if (width <= 0 || height <= 0)
+            throw new IOException("Corrupted frame file");
+
+        this.frameOffsets = new long[frameCount + 1];
+        for (int i = 0; i <= frameCount; i++) {
+            frameOffsets[i] = getLong(table + i * 8L);
+        }
+        validateFrames(table, (long) width * height);
+
+        this.columns = new float[width];
+        this.rows = new float[height];
+        for (int j = 0; j < width; j++) {
+            columns[j] = j * (w / width) - w / 2;
+        }
+        for (int i = 0; i < height; i++) {
+            rows[i] = h / 2 - i * (h / height);
+        }
+    }
+
+    /**
+     * Checks that the frames are laid out one after another between the
+     * header and the frame table, that the size of each frame matches its
+     * number of pixels, and that every pixel lies inside the frame, so a
+     * corrupted file is rejected here instead of failing while it's being
+     * rendered.
+     */
+    private void validateFrames(long table, long cells) throws IOException {
+        if (frameOffsets[0] < HEADER_SIZE || frameOffsets[frameCount] > table)
+            throw new IOException("Corrupted frame file");
+
+        for (int f = 0; f < frameCount; f++) {
+            long offset = frameOffsets[f];
+            long next = frameOffsets[f + 1];
+            if (next - offset < 4)
+                throw new IOException("Corrupted frame file");
+
+            int count = getInt(offset);
+            if (count < 0 || 4 + (long) count * PIXEL_SIZE != next - offset)
+                throw new IOException("Corrupted frame file");
+
+            for (long p = offset + 4; p < next; p += PIXEL_SIZE) {
+                int cell = getInt(p);
+                if (cell < 0 || cell >= cells)
+                    throw new IOException("Corrupted frame file");
+            }
+        }
+    }
+
+    /**
+     * Encodes a sequence of images into a frame file. The images are read
+     * one by one, so the sequence can be generated lazily.
+     * @param file the file that will be written.
+     * @param frames the images of the animation.
+     * @param width the width, in pixels, of the encoded frames.
+     * @param height the height, in pixels, of the encoded frames.
+     * @param filter the filter used to scale the images to the size of the
+     *               frames.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void encode(Path file, Iterable<Raster> frames, int width,
+                              int height, ScalingFilter filter)
+            throws IOException {
+        long[] offsets = new long[16];
+        int count = 0;
+        long position = HEADER_SIZE;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(new byte[HEADER_SIZE]);
+            for (Raster frame : frames) {
+                if (count + 1 >= offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                offsets[count++] = position;
+
+                int[] pixels = frame.scale(width, height, filter).pixels;
+                int visible = 0;
+                for (int argb : pixels) {
+                    if (((argb >> 24) & 0xFF) >= 127) {
+                        visible++;
+                    }
+                }
+
+                out.writeInt(visible);
+                for (int i = 0; i < pixels.length; i++) {
+                    int argb = pixels[i];
+                    if (((argb >> 24) & 0xFF) >= 127) {
+                        out.writeInt(i);
+                        out.writeByte(argb >> 16);
+                        out.writeByte(argb >> 8);
+                        out.writeByte(argb);
+                    }
+                }
+                position += 4 + (long) visible * PIXEL_SIZE;
+            }
+            offsets[count] = position;
+
+            for (int i = 0; i <= count; i++) {
+                out.writeLong(offsets[i]);
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height)
+                .putInt(count).putLong(position);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            channel.write(header, 0);
+        }
+    }
+
+    /**
+     * Returns the index of the frame that is rendered at the specified tick.
+     * @param tick the tick.
+     * @return the index of the frame.
+     */
+    public int frameAt(int tick) {
+        return Math.floorMod(Math.floorDiv(tick, ticksPerFrame), frameCount);
+    }
+
+    /**
+     * Returns the number of visible pixels of the specified frame.
+     * @param frame the index of the frame.
+     * @return the number of pixels.
+     */
+    public int frameSize(int frame) {
+        return getInt(frameOffsets[frame]);
+    }
+
+    private byte get(long position) {
+        return windows[(int) (position >>> WINDOW_SHIFT)]
+                .get((int) position & (WINDOW_SIZE - 1));
+    }
+
+    private int getInt(long position) {
+        int offset = (int) position & (WINDOW_SIZE - 1);
+        if (offset <= WINDOW_SIZE - 4) {
+            return windows[(int) (position >>> WINDOW_SHIFT)].getInt(offset);
+        }
+
+        //The int is split between two windows.
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = value << 8 | (get(position + i) & 0xFF);
+        }
+        return value;
+    }
+
+    private long getLong(long position) {
+        return (long) getInt(position) << 32
+                | (getInt(position + 4) & 0xFFFFFFFFL);
+    }
+
+    private Particle particle(int rgb) {
+        int slot = (rgb ^ (rgb >>> 12)) & (PARTICLE_CACHE_SIZE - 1);
+        CachedParticle cached = particleCache[slot];
+        if (cached != null && cached.rgb == rgb) {
+            return cached.particle;
+        }
+
+        //Math.max(0.001f...): if speed is 0.0f, Minecraft draws it
+        //with a red color. This code avoids it.
+        float r = Math.max(0.001f, ((rgb >> 16) & 0xFF) / 256.0f);
+        float g = Math.max(0.001f, ((rgb >> 8) & 0xFF) / 256.0f);
+        float b = Math.max(0.001f, (rgb & 0xFF) / 256.0f);
+
+        Particle particle = Particle.builder()
+                .effect(particleType)
+                .radius(visibilityRadius)
+                .count(0)
+                .offsetX(r)
+                .offsetY(g)
+                .offsetZ(b)
+                .speed(1.0f).build();
+        particleCache[slot] = new CachedParticle(rgb, particle);
+        return particle;
+    }
+
+    /**
+     * Starts loading the frames that follow the specified one, if they
+     * haven't been requested yet.
+     */
+    private void readAhead(int frame) {
+        if (readAhead == 0) {
+            return;
+        }
+        int last = lastFrame.getAndSet(frame);
+        if (last == frame) {
+            return;
+        }
+
+        //When the animation advances one frame, only the frame that enters
+        //the read ahead window needs to be loaded.
+        int first = last == Math.floorMod(frame - 1, frameCount)
+                ? readAhead : 1;
+        executor.execute(() -> {
+            int sum = 0;
+            for (int i = first; i <= readAhead; i++) {
+                int f = (frame + i) % frameCount;
+                for (long p = frameOffsets[f]; p < frameOffsets[f + 1];
+                     p += PAGE_SIZE) {
+                    sum += get(p);
+                }
+            }
+            touched = sum;
+        });
+    }
+
+    @Override
+    public Stream<SuppliedParticle> supply(int tick) {
+        if (tick % appearingInterval == 0) {
+            int frame = frameAt(tick);
+            readAhead(frame);
+            long start = frameOffsets[frame] + 4;
+            return IntStream.range(0, frameSize(frame)).mapToObj(i -> {
+                long p = start + (long) i * PIXEL_SIZE;
+                int cell = getInt(p);
+                return new SuppliedParticle(particle(rgb(p)),
+                        new Vector3(columns[cell % width], 0,
+                                rows[cell / width]));
+            });
+        } else {
+            return Stream.of();
+        }
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        if (tick % appearingInterval == 0) {
+            int frame = frameAt(tick);
+            readAhead(frame);
+            int n = frameSize(frame);
+            long p = frameOffsets[frame] + 4;
+            for (int i = 0; i < n; i++, p += PIXEL_SIZE) {
+                int cell = getInt(p);
+                sink.accept(particle(rgb(p)), columns[cell % width], 0,
+                        rows[cell / width]);
+            }
+        }
+    }
+
+    private int rgb(long p) {
+        return (get(p + 4) & 0xFF) << 16
+                | (get(p + 5) & 0xFF) << 8
+                | (get(p + 6) & 0xFF);
+    }
+
+    @Override
+    public int period() {
+        long period = (long) frameCount * ticksPerFrame;
+        return period % appearingInterval == 0 && period <= Integer.MAX_VALUE
+                ? (int) period : 0;
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return tick % appearingInterval == 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return tick + Math.floorMod(-tick, appearingInterval);
+    }
+
+    private static final class CachedParticle {
+        final int rgb;
+        final Particle particle;
+
+        CachedParticle(int rgb, Particle particle) {
+            this.rgb = rgb;
+            this.particle = particle;
+        }
+    }
+}
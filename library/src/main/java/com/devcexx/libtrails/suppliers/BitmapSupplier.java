@@ -17,6 +17,7 @@
 package com.devcexx.libtrails.suppliers;
 
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleSink;
 import com.devcexx.libtrails.ParticleSupplier;
 import com.devcexx.libtrails.SuppliedParticle;
 import com.devcexx.libtrails.Vector3;
@@ -25,6 +26,7 @@ import org.bukkit.Effect;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
 import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -32,10 +34,25 @@ import java.util.stream.Stream;
  * particles in Minecraft, from a bitmap.
  */
 public class BitmapSupplier implements ParticleSupplier {
-    public final SuppliedParticle[] particles;
+
+    /**
+     * The distinct particles of the image, one per color.
+     */
+    public final Particle[] palette;
     public final int allocatedPixels;
     public final int appearingInterval;
 
+    //The image is stored as a grid: each visible pixel is stored as its
+    //position in the grid and the index of its color in the palette, and
+    //the coordinates of each column and row are shared by all its pixels.
+    private final int width;
+    private final float[] columns;
+    private final float[] rows;
+    private final int[] cells;
+    private final int[] colors;
+
+    private SuppliedParticle[] particles;
+
     /**
      * Creates a new bitmap supplier.
      * @param particleType the type of the particle that will be spawned. MUST
@@ -59,9 +76,39 @@ public class BitmapSupplier implements ParticleSupplier {
                           float h, float horizontalResolution,
                           float verticalResolution) {
 
-        this(particleType, appearingInterval, visibilityRadius, image::getRGB,
-                image.getWidth(), image.getHeight(), w, h, horizontalResolution,
-                verticalResolution);
+        this(particleType, appearingInterval, visibilityRadius, image, w, h,
+                horizontalResolution, verticalResolution,
+                ScalingFilter.NEAREST);
+    }
+
+    /**
+     * Creates a new bitmap supplier. The image is read in a single pass, and
+     * then scaled to the final resolution with the specified filter.
+     * @param particleType the type of the particle that will be spawned. MUST
+     *                     BE a coloreable particle, (COLORED_DUST or SPELL).
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each image.
+     * @param visibilityRadius the visible radius of the particles. Anyone
+     *                         in the same world as the particles, and nearer
+     *                         than this value will be able to see them.
+     * @param image an instance of {@link BufferedImage} that contains the
+     *              imagen that will be rendered.
+     * @param w the width, in Minecraft Blocks of the rendered image.
+     * @param h the height, in Minecraft Blocks of the rendered image.
+     * @param horizontalResolution the number of horizontal particles per
+     *                             block that will compose the rendered image.
+     * @param verticalResolution the number of vertical particles per
+     *                             block that will compose the rendered image.
+     * @param filter the filter used to scale the image.
+     */
+    public BitmapSupplier(Effect particleType, int appearingInterval,
+                          int visibilityRadius, BufferedImage image, float w,
+                          float h, float horizontalResolution,
+                          float verticalResolution, ScalingFilter filter) {
+
+        this(particleType, appearingInterval, visibilityRadius,
+                Raster.from(image), w, h, horizontalResolution,
+                verticalResolution, filter);
     }
 
     /**
@@ -94,6 +141,68 @@ public class BitmapSupplier implements ParticleSupplier {
                           float horizontalResolution,
                           float verticalResolution) {
 
+        this(particleType, appearingInterval, visibilityRadius,
+                Raster.of(provider, originw, originh), w, h,
+                horizontalResolution, verticalResolution,
+                ScalingFilter.NEAREST);
+    }
+
+    /**
+     * Creates a new bitmap supplier.
+     * @param particleType the type of the particle that will be spawned. MUST
+     *                     BE a coloreable particle, (COLORED_DUST or SPELL).
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each image.
+     * @param visibilityRadius the visible radius of the particles. Anyone
+     *                         in the same world as the particles, and nearer
+     *                         than this value will be able to see them.
+     * @param raster the pixels of the image that will be rendered.
+     * @param w the width, in Minecraft Blocks of the rendered image.
+     * @param h the height, in Minecraft Blocks of the rendered image.
+     * @param horizontalResolution the number of horizontal particles per
+     *                             block that will compose the rendered image.
+     * @param verticalResolution the number of vertical particles per
+     *                             block that will compose the rendered image.
+     * @param filter the filter used to scale the image to the final
+     *               resolution.
+     */
+    public BitmapSupplier(Effect particleType, int appearingInterval,
+                          int visibilityRadius, Raster raster, float w,
+                          float h, float horizontalResolution,
+                          float verticalResolution, ScalingFilter filter) {
+
+        this(particleType, appearingInterval, visibilityRadius, raster, w, h,
+                horizontalResolution, verticalResolution, filter, 0);
+    }
+
+    /**
+     * Creates a new bitmap supplier, which reduces the colors of the image to
+     * the specified number, so it can be represented with less particles.
+     * @param particleType the type of the particle that will be spawned. MUST
+     *                     BE a coloreable particle, (COLORED_DUST or SPELL).
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each image.
+     * @param visibilityRadius the visible radius of the particles. Anyone
+     *                         in the same world as the particles, and nearer
+     *                         than this value will be able to see them.
+     * @param raster the pixels of the image that will be rendered.
+     * @param w the width, in Minecraft Blocks of the rendered image.
+     * @param h the height, in Minecraft Blocks of the rendered image.
+     * @param horizontalResolution the number of horizontal particles per
+     *                             block that will compose the rendered image.
+     * @param verticalResolution the number of vertical particles per
+     *                             block that will compose the rendered image.
+     * @param filter the filter used to scale the image to the final
+     *               resolution.
+     * @param maxColors the maximum number of colors of the rendered image, or
+     *                  0 to keep all the colors of the image.
+     */
+    public BitmapSupplier(Effect particleType, int appearingInterval,
+                          int visibilityRadius, Raster raster, float w,
+                          float h, float horizontalResolution,
+                          float verticalResolution, ScalingFilter filter,
+                          int maxColors) {
+
         if (particleType != Effect.COLOURED_DUST
                 && particleType != Effect.SPELL)
             throw new IllegalArgumentException("The specified effect " +
@@ -104,60 +213,122 @@ public class BitmapSupplier implements ParticleSupplier {
         int finalw = (int) (w * horizontalResolution);
         int finalh = (int) (h * verticalResolution);
 
-        particles = new SuppliedParticle[finalh * finalw];
-
         double xdist = 1.0 / horizontalResolution;
         double zdist = 1.0 / verticalResolution;
 
         float midw = w / 2;
         float midh = h / 2;
 
-        double xScale = originw/(double)finalw;
-        double yScale = originh/(double)finalh;
-        int px, py;
+        this.width = finalw;
+        this.columns = new float[finalw];
+        this.rows = new float[finalh];
+        for (int j = 0; j < finalw; j++) {
+            columns[j] = (float) (j * xdist - midw);
+        }
+        for (int i = 0; i < finalh; i++) {
+            rows[i] = (float) (midh - (i * zdist));
+        }
 
+        int[] pixels = raster.scale(finalw, finalh, filter).pixels;
+        int[] visible = new int[pixels.length];
+        int[] rgb = new int[pixels.length];
         int index = 0;
 
-        //Nearest neighbor image scaling
-        for (int i = 0; i < finalh; i++) {
-            for (int j = 0; j < finalw; j++) {
-
-                px = (int) Math.floor(j*xScale);
-                py = (int) Math.floor(i*yScale);
-                int argb = provider.applyAsInt(px, py);
-
-                if (((argb >> 24) & 0xFF) >= 127) {
-
-                    //Math.max(0.001f...): if speed is 0.0f, Minecraft draws it
-                    //with a red color. This code avoids it.
-                    float r = Math.max(0.001f, ((argb >> 16) & 0xFF) / 256.0f);
-                    float g = Math.max(0.001f, ((argb >> 8) & 0xFF) / 256.0f);
-                    float b = Math.max(0.001f, (argb & 0xFF) / 256.0f);
-
-                    particles[index++] = new SuppliedParticle(
-                            Particle.builder()
-                                    .effect(particleType)
-                                    .radius(visibilityRadius)
-                                    .count(0)
-                                    .offsetX(r)
-                                    .offsetY(g)
-                                    .offsetZ(b)
-                                    .speed(1.0f).build(),
-                            new Vector3(j * xdist - midw, 0, midh - (i * zdist))
-                    );
-                }
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            if (((argb >> 24) & 0xFF) >= 127) {
+                visible[index] = i;
+                rgb[index++] = argb & 0xFFFFFF;
             }
         }
+
+        rgb = Arrays.copyOf(rgb, index);
+        if (maxColors > 0) {
+            MedianCut.quantize(rgb, maxColors);
+        }
+
+        int[] distinct = MedianCut.distinct(rgb);
+        this.palette = new Particle[distinct.length];
+        for (int i = 0; i < distinct.length; i++) {
+            int color = distinct[i];
+
+            //Math.max(0.001f...): if speed is 0.0f, Minecraft draws it
+            //with a red color. This code avoids it.
+            float r = Math.max(0.001f, ((color >> 16) & 0xFF) / 256.0f);
+            float g = Math.max(0.001f, ((color >> 8) & 0xFF) / 256.0f);
+            float b = Math.max(0.001f, (color & 0xFF) / 256.0f);
+
+            palette[i] = Particle.builder()
+                    .effect(particleType)
+                    .radius(visibilityRadius)
+                    .count(0)
+                    .offsetX(r)
+                    .offsetY(g)
+                    .offsetZ(b)
+                    .speed(1.0f).build();
+        }
+
+        this.cells = Arrays.copyOf(visible, index);
+        this.colors = new int[index];
+        for (int i = 0; i < index; i++) {
+            colors[i] = Arrays.binarySearch(distinct, rgb[i]);
+        }
         this.allocatedPixels = index;
     }
 
+    /**
+     * Returns the pixels of the image as supplied particles. The array is
+     * built on the first call, since the image is stored as a grid.
+     * @return the visible pixels of the image, in row-major order.
+     * @deprecated the pixels are no longer stored as supplied particles;
+     * this array holds an extra object per pixel. Use {@link #supply(int)}
+     * or {@link #supplyInto(int, ParticleSink)} instead.
+     */
+    @Deprecated
+    public synchronized SuppliedParticle[] getParticles() {
+        if (particles == null) {
+            particles = supply(0).toArray(SuppliedParticle[]::new);
+        }
+        return particles;
+    }
+
     @Override
     public Stream<SuppliedParticle> supply(int tick) {
         if (tick % appearingInterval == 0) {
-            return Arrays.stream(particles, 0, allocatedPixels);
+            return IntStream.range(0, allocatedPixels).mapToObj(i -> {
+                int cell = cells[i];
+                return new SuppliedParticle(palette[colors[i]],
+                        new Vector3(columns[cell % width], 0,
+                                rows[cell / width]));
+            });
         } else {
             return Stream.of();
         }
     }
 
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        if (tick % appearingInterval == 0) {
+            for (int i = 0; i < allocatedPixels; i++) {
+                int cell = cells[i];
+                sink.accept(palette[colors[i]], columns[cell % width], 0,
+                        rows[cell / width]);
+            }
+        }
+    }
+
+    @Override
+    public int period() {
+        return appearingInterval;
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return tick % appearingInterval == 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return tick + Math.floorMod(-tick, appearingInterval);
+    }
 }
@@ -17,11 +17,14 @@
 package com.devcexx.libtrails.suppliers;
 
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleSink;
 import com.devcexx.libtrails.ParticleSupplier;
 import com.devcexx.libtrails.SuppliedParticle;
+import com.devcexx.libtrails.TrailMath;
 import com.devcexx.libtrails.Vector3;
 
 import java.util.Arrays;
+import java.util.function.DoubleFunction;
 import java.util.stream.Stream;
 
 /**
@@ -43,17 +46,37 @@ public class CircumferenceSupplier implements ParticleSupplier {
     public CircumferenceSupplier(Particle particle,
                                  float radius, float delta, float offset,
                                  int appearingInterval) {
+        this(particle, radius, CurveSampling.uniform(delta), offset,
+                appearingInterval);
+    }
+
+    /**
+     * Creates a new trail with the specified parameters.
+     * @param particle the particle of the circumference.
+     * @param radius the radius of the circumference.
+     * @param sampling the sampling that determines the points of the
+     *                 circumference, whose parameter is the angle, in
+     *                 radians.
+     * @param offset the start angle.
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each drawing.
+     */
+    public CircumferenceSupplier(Particle particle, float radius,
+                                 CurveSampling sampling, float offset,
+                                 int appearingInterval) {
         this.appearingInterval = appearingInterval;
 
-        int n = (int) Math.round(2 * Math.PI / delta);
-        particles = new SuppliedParticle[n];
-        for (int i = 0; i < n; i++) {
-            float angle = offset + delta * i;
-            particles[i] = new SuppliedParticle(particle, new Vector3(
-                    Math.cos(angle),
-                    0,
-                    Math.sin(angle)
-            ).mul(radius));
+        DoubleFunction<Vector3> curve = angle -> new Vector3(
+                TrailMath.cos((float) angle),
+                0,
+                TrailMath.sin((float) angle)
+        ).mul(radius);
+
+        float[] angles = sampling.sample(curve, offset, 2 * Math.PI, true);
+        particles = new SuppliedParticle[angles.length];
+        for (int i = 0; i < angles.length; i++) {
+            particles[i] = new SuppliedParticle(particle,
+                    curve.apply(angles[i]));
         }
     }
 
@@ -65,4 +88,29 @@ public class CircumferenceSupplier implements ParticleSupplier {
             return Stream.of();
         }
     }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        if (tick % appearingInterval == 0) {
+            for (SuppliedParticle p : particles) {
+                sink.accept(p.particle, p.position.x, p.position.y,
+                        p.position.z);
+            }
+        }
+    }
+
+    @Override
+    public int period() {
+        return appearingInterval;
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return tick % appearingInterval == 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return tick + Math.floorMod(-tick, appearingInterval);
+    }
 }
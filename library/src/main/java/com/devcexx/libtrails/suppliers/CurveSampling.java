@@ -0,0 +1,138 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails.suppliers;
+
+import com.devcexx.libtrails.Vector3;
+
+import java.util.function.DoubleFunction;
+
+/**
+ * Determines where the points of a parametric curve are placed. A curve can
+ * be sampled with a constant variation of its parameter, which is what the
+ * curve suppliers do by default, or with a constant distance between its
+ * points, measured along the curve. The latter avoids oversampling the
+ * parts of the curve where the point moves slowly, and undersampling the
+ * ones where it moves fast, so the same visual quality can be reached with
+ * fewer particles.
+ */
+public abstract class CurveSampling {
+
+    private static final int MIN_SEGMENTS = 256;
+    private static final int MAX_SEGMENTS = 1 << 18;
+
+    CurveSampling() {
+    }
+
+    /**
+     * Returns a sampling that places the points with a constant variation of
+     * the parameter of the curve.
+     * @param delta the variation of the parameter between each point.
+     * @return the sampling.
+     */
+    public static CurveSampling uniform(float delta) {
+        if (delta <= 0)
+            throw new IllegalArgumentException("The delta must be positive");
+
+        return new CurveSampling() {
+            @Override
+            public float[] sample(DoubleFunction<Vector3> curve, float from,
+                                  double span, boolean closed) {
+                int n = (int) Math.round(span / delta);
+                float[] ts = new float[n];
+                for (int i = 0; i < n; i++) {
+                    ts[i] = from + delta * i;
+                }
+                return ts;
+            }
+        };
+    }
+
+    /**
+     * Returns a sampling that places the points at a constant distance,
+     * measured along the curve.
+     * @param spacing the distance between each point, in Minecraft blocks.
+     * @return the sampling.
+     */
+    public static CurveSampling arcLength(float spacing) {
+        if (spacing <= 0)
+            throw new IllegalArgumentException("The spacing must be positive");
+
+        return new CurveSampling() {
+            @Override
+            public float[] sample(DoubleFunction<Vector3> curve, float from,
+                                  double span, boolean closed) {
+                return sampleByArcLength(curve, from, span, closed, spacing);
+            }
+        };
+    }
+
+    /**
+     * Returns the values of the parameter of the curve where its points must
+     * be placed.
+     * @param curve the function that returns the point of the curve for each
+     *              value of its parameter.
+     * @param from the first value of the parameter.
+     * @param span the length of the range of the parameter that is sampled.
+     * @param closed whether the curve ends where it starts, in which case
+     *               the last point of the range is not sampled, since it is
+     *               the same as the first one.
+     * @return the values of the parameter, in ascending order.
+     */
+    public abstract float[] sample(DoubleFunction<Vector3> curve, float from,
+                                   double span, boolean closed);
+
+    private static float[] sampleByArcLength(DoubleFunction<Vector3> curve,
+                                             float from, double span,
+                                             boolean closed, float spacing) {
+        //The arc length is approximated by the length of a polyline over the
+        //curve, which is refined until its segments are much smaller than the
+        //requested spacing.
+        int k = MIN_SEGMENTS;
+        double[] length;
+        while (true) {
+            length = new double[k + 1];
+            double maxChord = 0;
+            Vector3 prev = curve.apply(from);
+            for (int j = 1; j <= k; j++) {
+                Vector3 v = curve.apply(from + span * j / k);
+                double chord = v.distance(prev);
+                maxChord = Math.max(maxChord, chord);
+                length[j] = length[j - 1] + chord;
+                prev = v;
+            }
+            if (maxChord <= spacing / 4 || k >= MAX_SEGMENTS) {
+                break;
+            }
+            k *= 2;
+        }
+
+        double total = length[k];
+        int n = Math.max(1, (int) Math.round(total / spacing));
+        float[] ts = new float[closed ? n : n + 1];
+        int j = 0;
+        for (int m = 0; m < ts.length; m++) {
+            double target = total * m / n;
+            while (j < k - 1 && length[j + 1] < target) {
+                j++;
+            }
+            double chord = length[j + 1] - length[j];
+            double frac = chord > 0 ? (target - length[j]) / chord : 0;
+            ts[m] = (float) (from + span * (j + Math.min(1, frac)) / k);
+        }
+        return ts;
+    }
+}
@@ -41,12 +41,86 @@ public class EpitrochoidSupplier extends SpirographSupplier {
                 appearingInterval);
     }
 
+    /**
+     * Builds a new epitrochoid trail whose points are placed by the specified
+     * sampling.
+     * @param particle The particle that will be spawned.
+     * @param sampling The sampling that determines the points of the curve,
+     *                 whose parameter is the angle, in radians.
+     * @param directorRadius The radius of the fixed circumference.
+     * @param rollingRadius The radius of the rolling circumference.
+     * @param hdist The distance between the center of the rolling center to
+     *              the point that will be used to draw the curve.
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each drawing.
+     */
+    public EpitrochoidSupplier(Particle particle, CurveSampling sampling,
+                               float directorRadius, float rollingRadius,
+                               float hdist, int appearingInterval) {
+        super(particle, sampling, directorRadius, rollingRadius, hdist,
+                appearingInterval);
+    }
+
+    /**
+     * Builds a new lazy epitrochoid trail, whose points are computed when
+     * they are emitted.
+     * @param particle The particle that will be spawned.
+     * @param delta The variation of the angle per drawn point.
+     * @param directorRadius The radius of the fixed circumference.
+     * @param rollingRadius The radius of the rolling circumference.
+     * @param hdist The distance between the center of the rolling center to
+     *              the point that will be used to draw the curve.
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each drawing.
+     * @param segmentLength the number of points drawn on each appearance, or
+     *                      0 to draw the whole curve each time.
+     * @param cachedSegments the maximum number of segments whose points are
+     *                       kept in memory, or 0 to always compute them.
+     */
+    public EpitrochoidSupplier(Particle particle, float delta,
+                               float directorRadius, float rollingRadius,
+                               float hdist, int appearingInterval,
+                               int segmentLength, int cachedSegments) {
+        super(particle, delta, directorRadius, rollingRadius, hdist,
+                appearingInterval, segmentLength, cachedSegments);
+    }
+
+    /**
+     * Builds a new lazy epitrochoid trail whose points are placed by the
+     * specified sampling. The curve is divided in segments that cover the
+     * same range of the angle, which are sampled when they are emitted.
+     * @param particle The particle that will be spawned.
+     * @param sampling The sampling that determines the points of each
+     *                 segment, whose parameter is the angle, in radians.
+     * @param directorRadius The radius of the fixed circumference.
+     * @param rollingRadius The radius of the rolling circumference.
+     * @param hdist The distance between the center of the rolling center to
+     *              the point that will be used to draw the curve.
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each drawing.
+     * @param segments the number of segments the curve is divided in, one
+     *                 drawn on each appearance, or 0 to draw the whole curve
+     *                 each time.
+     * @param cachedSegments the maximum number of segments whose points are
+     *                       kept in memory. Since sampling a segment is
+     *                       expensive, at least 1 segment must be kept.
+     */
+    public EpitrochoidSupplier(Particle particle, CurveSampling sampling,
+                               float directorRadius, float rollingRadius,
+                               float hdist, int appearingInterval,
+                               int segments, int cachedSegments) {
+        super(particle, sampling, directorRadius, rollingRadius, hdist,
+                appearingInterval, segments, cachedSegments);
+    }
+
     @Override
     protected Vector3 fetchVector(float R, float r, float h, float theta) {
         return new Vector3(
-                (R + r) * Math.cos(theta) - h * Math.cos(theta * (R + r) / r),
+                (R + r) * TrailMath.cos(theta)
+                        - h * TrailMath.cos(theta * (R + r) / r),
                 0,
-                (R + r) * Math.sin(theta) - h * Math.sin(theta * (R + r) / r)
+                (R + r) * TrailMath.sin(theta)
+                        - h * TrailMath.sin(theta * (R + r) / r)
         );
     }
 }
@@ -17,6 +17,7 @@
 package com.devcexx.libtrails.suppliers;
 
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleSink;
 import com.devcexx.libtrails.SuppliedParticle;
 
 import java.util.stream.Stream;
@@ -41,4 +42,25 @@ public class HelixSupplier extends CircumferenceSupplier {
     public Stream<SuppliedParticle> supply(int tick) {
         return Stream.of(particles[tick % particles.length]);
     }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        SuppliedParticle p = particles[tick % particles.length];
+        sink.accept(p.particle, p.position.x, p.position.y, p.position.z);
+    }
+
+    @Override
+    public int period() {
+        return particles.length;
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return true;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return tick;
+    }
 }
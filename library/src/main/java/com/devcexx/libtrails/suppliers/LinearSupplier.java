@@ -17,6 +17,7 @@
 package com.devcexx.libtrails.suppliers;
 
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleSink;
 import com.devcexx.libtrails.ParticleSupplier;
 import com.devcexx.libtrails.SuppliedParticle;
 import com.devcexx.libtrails.Vector3;
@@ -51,4 +52,15 @@ public class LinearSupplier implements ParticleSupplier {
     public Stream<SuppliedParticle> supply(int tick) {
         return Stream.of(this.particle);
     }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        sink.accept(particle.particle, particle.position.x,
+                particle.position.y, particle.position.z);
+    }
+
+    @Override
+    public int period() {
+        return 1;
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails.suppliers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reduces the number of colors of an image with the median cut algorithm:
+ * the colors of the image are repeatedly divided in two halves with the same
+ * number of pixels, along the channel with the widest range, until there
+ * are as many groups as the requested colors. Each group is then replaced by
+ * the average of its colors.
+ */
+final class MedianCut {
+
+    private MedianCut() {
+    }
+
+    /**
+     * Replaces the colors of the specified RGB pixels, in place, so there are
+     * at most {@code maxColors} distinct colors. The alpha channel is ignored.
+     * @param rgb the pixels.
+     * @param maxColors the maximum number of distinct colors.
+     */
+    static void quantize(int[] rgb, int maxColors) {
+        for (int i = 0; i < rgb.length; i++) {
+            rgb[i] &= 0xFFFFFF;
+        }
+
+        int[] unique = distinct(rgb);
+        if (unique.length <= maxColors) {
+            return;
+        }
+
+        int[] counts = new int[unique.length];
+        for (int c : rgb) {
+            counts[Arrays.binarySearch(unique, c)]++;
+        }
+
+        //The colors are reordered while the boxes are split, so each box is a
+        //range of this array.
+        int[] colors = unique.clone();
+        List<int[]> boxes = new ArrayList<>();
+        boxes.add(new int[] { 0, colors.length });
+
+        while (boxes.size() < maxColors) {
+            int[] widest = null;
+            int widestShift = 0;
+            int widestRange = 0;
+            for (int[] box : boxes) {
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int range = range(colors, box[0], box[1], shift);
+                    if (range > widestRange) {
+                        widest = box;
+                        widestShift = shift;
+                        widestRange = range;
+                    }
+                }
+            }
+            if (widest == null) {
+                break;
+            }
+
+            int split = split(colors, unique, counts, widest[0], widest[1],
+                    widestShift);
+            boxes.add(new int[] { split, widest[1] });
+            widest[1] = split;
+        }
+
+        int[] mapped = new int[unique.length];
+        for (int[] box : boxes) {
+            int average = average(colors, unique, counts, box[0], box[1]);
+            for (int i = box[0]; i < box[1]; i++) {
+                mapped[Arrays.binarySearch(unique, colors[i])] = average;
+            }
+        }
+        for (int i = 0; i < rgb.length; i++) {
+            rgb[i] = mapped[Arrays.binarySearch(unique, rgb[i])];
+        }
+    }
+
+    /**
+     * Returns the distinct values of the specified array, sorted.
+     */
+    static int[] distinct(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[n - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+    private static int range(int[] colors, int from, int to, int shift) {
+        int min = 255;
+        int max = 0;
+        for (int i = from; i < to; i++) {
+            int v = (colors[i] >> shift) & 0xFF;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        return max - min;
+    }
+
+    /**
+     * Sorts the colors of the box by the specified channel and returns the
+     * index where the box must be split, so both halves cover about the same
+     * number of pixels and neither of them is empty.
+     */
+    private static int split(int[] colors, int[] unique, int[] counts,
+                             int from, int to, int shift) {
+        long[] keys = new long[to - from];
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            keys[i - from] = ((long) ((colors[i] >> shift) & 0xFF) << 32)
+                    | colors[i];
+            total += counts[Arrays.binarySearch(unique, colors[i])];
+        }
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++) {
+            colors[i] = (int) keys[i - from];
+        }
+
+        long accumulated = 0;
+        for (int i = from; i < to - 1; i++) {
+            accumulated += counts[Arrays.binarySearch(unique, colors[i])];
+            if (accumulated * 2 >= total) {
+                return i + 1;
+            }
+        }
+        return to - 1;
+    }
+
+    private static int average(int[] colors, int[] unique, int[] counts,
+                               int from, int to) {
+        long r = 0;
+        long g = 0;
+        long b = 0;
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            int c = colors[i];
+            long n = counts[Arrays.binarySearch(unique, c)];
+            r += ((c >> 16) & 0xFF) * n;
+            g += ((c >> 8) & 0xFF) * n;
+            b += (c & 0xFF) * n;
+            total += n;
+        }
+        return (int) ((r + total / 2) / total) << 16
+                | (int) ((g + total / 2) / total) << 8
+                | (int) ((b + total / 2) / total);
+    }
+}
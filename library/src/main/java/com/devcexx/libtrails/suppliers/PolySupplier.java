@@ -17,8 +17,10 @@
 package com.devcexx.libtrails.suppliers;
 
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleSink;
 import com.devcexx.libtrails.ParticleSupplier;
 import com.devcexx.libtrails.SuppliedParticle;
+import com.devcexx.libtrails.TrailMath;
 import com.devcexx.libtrails.TrailUtil;
 import com.devcexx.libtrails.Vector3;
 
@@ -57,8 +59,8 @@ public class PolySupplier implements ParticleSupplier {
         float fullAngle = (2 * (float) Math.PI / vertex) * (jumps + 1);
         double linesLength = new Vector3(radius, 0, 0)
                 .sub(
-                        radius * (float) Math.cos(fullAngle),
-                        radius * (float) Math.sin(fullAngle), 0
+                        radius * (float) TrailMath.cos(fullAngle),
+                        radius * (float) TrailMath.sin(fullAngle), 0
                 ).norm();
 
         int n = (int) Math.round(linesLength / step);
@@ -73,10 +75,10 @@ public class PolySupplier implements ParticleSupplier {
             float originAngle = angleOffset + i * fullAngle;
             float targetAngle = originAngle + fullAngle;
 
-            Vector3 ptFrom = new Vector3(radius * Math.cos(originAngle), 0,
-                    radius * Math.sin(originAngle));
-            Vector3 ptTo = new Vector3(radius * Math.cos(targetAngle), 0,
-                    radius * Math.sin(targetAngle));
+            Vector3 ptFrom = new Vector3(radius * TrailMath.cos(originAngle), 0,
+                    radius * TrailMath.sin(originAngle));
+            Vector3 ptTo = new Vector3(radius * TrailMath.cos(targetAngle), 0,
+                    radius * TrailMath.sin(targetAngle));
 
             TrailUtil.fillWithLine(particles, particle, i * n,
                     ptFrom, ptTo.sub(ptFrom).normalize(), step, n);
@@ -91,4 +93,29 @@ public class PolySupplier implements ParticleSupplier {
             return Stream.of();
         }
     }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        if (tick % appearingInterval == 0) {
+            for (SuppliedParticle p : particles) {
+                sink.accept(p.particle, p.position.x, p.position.y,
+                        p.position.z);
+            }
+        }
+    }
+
+    @Override
+    public int period() {
+        return appearingInterval;
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return tick % appearingInterval == 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return tick + Math.floorMod(-tick, appearingInterval);
+    }
 }
@@ -0,0 +1,279 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails.suppliers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * An image stored as an array of ARGB pixels, with 8 bits per channel, in
+ * row-major order. It is the source of the pixels of a
+ * {@link BitmapSupplier}, and it allows to read a {@link BufferedImage} in a
+ * single pass, instead of converting the color of each pixel separately.
+ */
+public final class Raster {
+
+    /**
+     * The width of the image, in pixels.
+     */
+    public final int width;
+
+    /**
+     * The height of the image, in pixels.
+     */
+    public final int height;
+
+    /**
+     * The pixels of the image, in ARGB format and row-major order. The pixel
+     * (x, y) is located at the index {@code y * width + x}.
+     */
+    public final int[] pixels;
+
+    /**
+     * Creates a new raster.
+     * @param width the width of the image.
+     * @param height the height of the image.
+     * @param pixels the pixels of the image, in ARGB format and row-major
+     *               order. The array is not copied.
+     */
+    public Raster(int width, int height, int[] pixels) {
+        if (width < 0 || height < 0)
+            throw new IllegalArgumentException("The size of the raster " +
+                    "cannot be negative");
+        if (pixels.length < width * height)
+            throw new IllegalArgumentException("There are not enough pixels " +
+                    "for the size of the raster");
+
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Reads the whole specified image.
+     * @param image the image.
+     * @return a new raster with the pixels of the image.
+     */
+    public static Raster from(BufferedImage image) {
+        return from(image, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Reads a region of the specified image. If the pixels of the image are
+     * stored as packed ARGB or RGB integers, they are copied directly from
+     * its data buffer. Otherwise, they are converted with a single call to
+     * {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+     * @param image the image.
+     * @param x the x coordinate of the upper-left corner of the region.
+     * @param y the y coordinate of the upper-left corner of the region.
+     * @param w the width of the region.
+     * @param h the height of the region.
+     * @return a new raster with the pixels of the region.
+     */
+    public static Raster from(BufferedImage image, int x, int y, int w,
+                              int h) {
+        int[] pixels = new int[w * h];
+        int type = image.getType();
+        WritableRaster raster = image.getRaster();
+
+        if ((type == BufferedImage.TYPE_INT_ARGB
+                || type == BufferedImage.TYPE_INT_RGB)
+                && raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getSampleModel()
+                instanceof SinglePixelPackedSampleModel) {
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            int stride = ((SinglePixelPackedSampleModel) raster
+                    .getSampleModel()).getScanlineStride();
+            int[] data = buffer.getData();
+            int offset = buffer.getOffset()
+                    + (y - raster.getSampleModelTranslateY()) * stride
+                    + (x - raster.getSampleModelTranslateX());
+            for (int row = 0; row < h; row++) {
+                System.arraycopy(data, offset + row * stride, pixels,
+                        row * w, w);
+            }
+            if (type == BufferedImage.TYPE_INT_RGB) {
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] |= 0xFF000000;
+                }
+            }
+        } else {
+            image.getRGB(x, y, w, h, pixels, 0, w);
+        }
+        return new Raster(w, h, pixels);
+    }
+
+    /**
+     * Reads an image from the specified provider.
+     * @param provider the function that returns the color of the pixel
+     *                 located at (x, y), in ARGB format.
+     * @param width the width of the image.
+     * @param height the height of the image.
+     * @return a new raster with the pixels of the image.
+     */
+    public static Raster of(IntBinaryOperator provider, int width,
+                            int height) {
+        int[] pixels = new int[width * height];
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[index++] = provider.applyAsInt(x, y);
+            }
+        }
+        return new Raster(width, height, pixels);
+    }
+
+    /**
+     * Returns the color of the specified pixel.
+     * @param x the x coordinate of the pixel.
+     * @param y the y coordinate of the pixel.
+     * @return the color of the pixel, in ARGB format.
+     */
+    public int getRGB(int x, int y) {
+        return pixels[y * width + x];
+    }
+
+    /**
+     * Returns a copy of this image scaled to the specified size. The filters
+     * that average several pixels weight their colors by their alpha, so
+     * transparent pixels don't darken the edges of the image.
+     * @param w the new width.
+     * @param h the new height.
+     * @param filter the filter used to scale the image.
+     * @return the scaled image, or this image if it already has the
+     * specified size.
+     */
+    public Raster scale(int w, int h, ScalingFilter filter) {
+        if (w == width && h == height) {
+            return this;
+        }
+
+        int[] out = new int[w * h];
+        if (width == 0 || height == 0) {
+            return new Raster(w, h, out);
+        }
+
+        double xScale = width / (double) w;
+        double yScale = height / (double) h;
+        int index = 0;
+        for (int i = 0; i < h; i++) {
+            for (int j = 0; j < w; j++) {
+                switch (filter) {
+                    case BOX:
+                        out[index++] = box(j * xScale, i * yScale,
+                                (j + 1) * xScale, (i + 1) * yScale);
+                        break;
+                    case BILINEAR:
+                        out[index++] = bilinear((j + 0.5) * xScale - 0.5,
+                                (i + 0.5) * yScale - 0.5);
+                        break;
+                    default:
+                        out[index++] = getRGB((int) (j * xScale),
+                                (int) (i * yScale));
+                }
+            }
+        }
+        return new Raster(w, h, out);
+    }
+
+    private int box(double fx0, double fy0, double fx1, double fy1) {
+        int x0 = (int) fx0;
+        int y0 = (int) fy0;
+        int x1 = Math.min(width, Math.max(x0 + 1, (int) fx1));
+        int y1 = Math.min(height, Math.max(y0 + 1, (int) fy1));
+
+        long a = 0;
+        long r = 0;
+        long g = 0;
+        long b = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int argb = pixels[y * width + x];
+                int pa = (argb >>> 24);
+                a += pa;
+                r += ((argb >> 16) & 0xFF) * pa;
+                g += ((argb >> 8) & 0xFF) * pa;
+                b += (argb & 0xFF) * pa;
+            }
+        }
+        return unpremultiply(a, r, g, b, (x1 - x0) * (y1 - y0));
+    }
+
+    private int bilinear(double fx, double fy) {
+        fx = Math.max(0, Math.min(width - 1, fx));
+        fy = Math.max(0, Math.min(height - 1, fy));
+        int x0 = (int) fx;
+        int y0 = (int) fy;
+        int x1 = Math.min(width - 1, x0 + 1);
+        int y1 = Math.min(height - 1, y0 + 1);
+
+        //Weights in 1/256 units, so the result can be computed in integers.
+        int wx = (int) ((fx - x0) * 256);
+        int wy = (int) ((fy - y0) * 256);
+        int w00 = (256 - wx) * (256 - wy);
+        int w10 = wx * (256 - wy);
+        int w01 = (256 - wx) * wy;
+        int w11 = wx * wy;
+        int c00 = pixels[y0 * width + x0];
+        int c10 = pixels[y0 * width + x1];
+        int c01 = pixels[y1 * width + x0];
+        int c11 = pixels[y1 * width + x1];
+
+        long a = interpolate(c00, c10, c01, c11, w00, w10, w01, w11, 24);
+        long r = interpolate(c00, c10, c01, c11, w00, w10, w01, w11, 16);
+        long g = interpolate(c00, c10, c01, c11, w00, w10, w01, w11, 8);
+        long b = interpolate(c00, c10, c01, c11, w00, w10, w01, w11, 0);
+        return unpremultiply(a, r, g, b, 256 * 256);
+    }
+
+    /**
+     * Returns the weighted sum of the specified channel of four pixels,
+     * premultiplied by their alpha, except for the alpha channel itself.
+     */
+    private static long interpolate(int c00, int c10, int c01, int c11,
+                                    int w00, int w10, int w01, int w11,
+                                    int shift) {
+        return premultiplied(c00, shift) * w00
+                + premultiplied(c10, shift) * w10
+                + premultiplied(c01, shift) * w01
+                + premultiplied(c11, shift) * w11;
+    }
+
+    private static long premultiplied(int argb, int shift) {
+        int alpha = argb >>> 24;
+        return shift == 24 ? alpha : (long) ((argb >> shift) & 0xFF) * alpha;
+    }
+
+    /**
+     * Builds a color from the sum of the alpha of several weighted pixels and
+     * the sum of their alpha-premultiplied color channels.
+     */
+    private static int unpremultiply(long a, long r, long g, long b,
+                                     long weight) {
+        if (a == 0) {
+            return 0;
+        }
+        int alpha = (int) ((a + weight / 2) / weight);
+        return (alpha << 24)
+                | (int) ((r + a / 2) / a) << 16
+                | (int) ((g + a / 2) / a) << 8
+                | (int) ((b + a / 2) / a);
+    }
+}
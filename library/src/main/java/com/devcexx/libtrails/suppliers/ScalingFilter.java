@@ -0,0 +1,41 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails.suppliers;
+
+/**
+ * The filters that can be used to scale a {@link Raster}.
+ */
+public enum ScalingFilter {
+
+    /**
+     * Each pixel takes the color of the nearest pixel of the source image.
+     * It is the fastest filter, and it keeps the hard edges of pixel art.
+     */
+    NEAREST,
+
+    /**
+     * Each pixel takes the average color of the pixels of the source image
+     * it covers. It is the best suited filter to reduce images.
+     */
+    BOX,
+
+    /**
+     * Each pixel takes the color interpolated from the four nearest pixels of
+     * the source image. It is the best suited filter to enlarge images.
+     */
+    BILINEAR
+}
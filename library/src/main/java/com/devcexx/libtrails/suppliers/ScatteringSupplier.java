@@ -16,22 +16,32 @@
 
 package com.devcexx.libtrails.suppliers;
 
+import com.devcexx.libtrails.CounterRandom;
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleBuffer;
+import com.devcexx.libtrails.ParticleSink;
 import com.devcexx.libtrails.ParticleSupplier;
 import com.devcexx.libtrails.SuppliedParticle;
 import com.devcexx.libtrails.Vector3;
 
-import java.util.Arrays;
 import java.util.Random;
 import java.util.stream.Stream;
 
 /**
  * Class that provides a trail that spreads particles randomly into
  * a defined space.
+ *
+ * By default, each frame is scattered with a new sequence of random numbers,
+ * so trails that share the supplier look different even if they are
+ * evaluated at the same tick. If the supplier is created with a seed, the
+ * random numbers are produced instead by a {@link CounterRandom} keyed on the
+ * seed, the tick and the index of each particle: the same tick always
+ * produces the same scatter, and the supplier can be evaluated from several
+ * threads without contention.
  */
 public class ScatteringSupplier implements ParticleSupplier{
 
-    private final Random random = new Random();
+    private final Random random;
     public final Particle[] particles;
     public final Vector3 spreadSpace;
     public final Vector3 spreadSpaceOffset;
@@ -39,6 +49,12 @@ public class ScatteringSupplier implements ParticleSupplier{
     public final int maxParticles;
     public final int appearingInteval;
 
+    /**
+     * The seed of the counter-based random numbers, or 0 if the supplier has
+     * been created without a seed.
+     */
+    public final long seed;
+
     /**
      * Creates a new trail with the specified parameters.
      * @param particles the possible kind of particles that could be spawned
@@ -55,6 +71,39 @@ public class ScatteringSupplier implements ParticleSupplier{
     public ScatteringSupplier(Particle[] particles, Vector3 spreadSpace,
                               Vector3 spreadSpaceOffset, int minParticles,
                               int maxParticles, int appearingInterval) {
+        this(particles, spreadSpace, spreadSpaceOffset, minParticles,
+                maxParticles, appearingInterval, new Random(), 0);
+    }
+
+    /**
+     * Creates a new trail with the specified parameters and a fixed seed. Two
+     * suppliers created with the same parameters and seed will produce the
+     * same particles on each tick.
+     * @param particles the possible kind of particles that could be spawned
+     *                  in the trail.
+     * @param spreadSpace the space where the particles can be spawned.
+     * @param spreadSpaceOffset the offset of the spread space from the center.
+     * @param minParticles the minimum count of particles that must be spawned
+     *                     in each step.
+     * @param maxParticles the maximum number of particles that could be spawned
+     *                     in each step.
+     * @param appearingInterval the time between each spawning, in Minecraft
+     *                          ticks.
+     * @param seed the seed of the random numbers.
+     */
+    public ScatteringSupplier(Particle[] particles, Vector3 spreadSpace,
+                              Vector3 spreadSpaceOffset, int minParticles,
+                              int maxParticles, int appearingInterval,
+                              long seed) {
+        this(particles, spreadSpace, spreadSpaceOffset, minParticles,
+                maxParticles, appearingInterval, null, seed);
+    }
+
+    private ScatteringSupplier(Particle[] particles, Vector3 spreadSpace,
+                               Vector3 spreadSpaceOffset, int minParticles,
+                               int maxParticles, int appearingInterval,
+                               Random random, long seed) {
+        this.random = random;
         this.particles = particles;
 
         //Half the size of the space, to consider the positive and negative
@@ -64,28 +113,64 @@ public class ScatteringSupplier implements ParticleSupplier{
         this.minParticles = minParticles;
         this.maxParticles = maxParticles;
         this.appearingInteval = appearingInterval;
+        this.seed = seed;
+    }
+
+    private int particleCount(CounterRandom counter, int tick) {
+        //The index -1 is reserved for the number of particles of the frame.
+        return counter.at(tick, -1).nextInt(maxParticles - minParticles)
+                + minParticles + 1;
     }
 
 
     @Override
     public Stream<SuppliedParticle> supply(int tick) {
-        if (tick % appearingInteval == 0) {
-            int n = random.nextInt(maxParticles - minParticles) + minParticles + 1;
-            SuppliedParticle[] res = new SuppliedParticle[n];
+        if (tick % appearingInteval != 0)
+            return Stream.of();
+
+        ParticleBuffer buffer = new ParticleBuffer();
+        supplyInto(tick, buffer);
+        return buffer.stream();
+    }
 
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        if (tick % appearingInteval == 0 && random != null) {
+            int n = random.nextInt(maxParticles - minParticles) + minParticles
+                    + 1;
             for (int i = 0; i < n; i++) {
-                res[i] = new SuppliedParticle(
-                        particles[random.nextInt(particles.length)],
-                        spreadSpaceOffset.add(
-                                spreadSpace.mul(
-                                        (float) random.nextGaussian(),
-                                        (float) random.nextGaussian(),
-                                        (float) random.nextGaussian()
-                                )));
+                sink.accept(particles[random.nextInt(particles.length)],
+                        spreadSpaceOffset.x + spreadSpace.x
+                                * (float) random.nextGaussian(),
+                        spreadSpaceOffset.y + spreadSpace.y
+                                * (float) random.nextGaussian(),
+                        spreadSpaceOffset.z + spreadSpace.z
+                                * (float) random.nextGaussian());
+            }
+        } else if (tick % appearingInteval == 0) {
+            CounterRandom counter = new CounterRandom(seed);
+            int n = particleCount(counter, tick);
+
+            for (int i = 0; i < n; i++) {
+                counter.at(tick, i);
+                sink.accept(particles[counter.nextInt(particles.length)],
+                        spreadSpaceOffset.x + spreadSpace.x
+                                * counter.nextGaussian(),
+                        spreadSpaceOffset.y + spreadSpace.y
+                                * counter.nextGaussian(),
+                        spreadSpaceOffset.z + spreadSpace.z
+                                * counter.nextGaussian());
             }
-            return Arrays.stream(res);
-        } else {
-            return Stream.of();
         }
     }
+
+    @Override
+    public boolean isActive(int tick) {
+        return tick % appearingInteval == 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return tick + Math.floorMod(-tick, appearingInteval);
+    }
 }
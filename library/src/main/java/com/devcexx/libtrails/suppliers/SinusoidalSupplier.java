@@ -17,10 +17,13 @@
 package com.devcexx.libtrails.suppliers;
 
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleSink;
 import com.devcexx.libtrails.ParticleSupplier;
 import com.devcexx.libtrails.SuppliedParticle;
+import com.devcexx.libtrails.TrailMath;
 import com.devcexx.libtrails.Vector3;
 
+import java.util.function.DoubleFunction;
 import java.util.stream.Stream;
 
 /**
@@ -40,15 +43,47 @@ public class SinusoidalSupplier implements ParticleSupplier {
      */
     public SinusoidalSupplier(Particle particle, float radius, float delta,
                               float offset, float rotation) {
-        int n = (int) (2 * Math.PI / delta);
-        particles = new SuppliedParticle[n];
-        for (int i = 0; i < n; i++) {
-            float angle = offset + delta * i;
-            particles[i] = new SuppliedParticle(particle, new Vector3(
-                    0,
-                    0,
-                    Math.sin(angle)
-            ).mul(radius).rotateY(rotation));
+        //CurveSampling.uniform rounds the number of points of the span,
+        //while this wave has always truncated it, so it is given the span
+        //covered by the truncated number of points, which keeps the points
+        //of the wave unchanged.
+        this(particle, radius, CurveSampling.uniform(delta),
+                (int) (2 * Math.PI / delta) * (double) delta, offset,
+                rotation);
+    }
+
+    /**
+     * Creates a new trail with the specified parameters. Since the wave
+     * emits one point per tick, sampling it by arc length makes the point
+     * move at a constant speed.
+     * @param particle the particle of the sinusoidal wave.
+     * @param radius the radius of the sinusoidal wave (amplitude).
+     * @param sampling the sampling that determines the points of the wave,
+     *                 whose parameter is the angle, in radians.
+     * @param offset the start angle, in radians.
+     * @param rotation the rotation angle of the wave around the Y axis,
+     *                 in radians.
+     */
+    public SinusoidalSupplier(Particle particle, float radius,
+                              CurveSampling sampling, float offset,
+                              float rotation) {
+        this(particle, radius, sampling, 2 * Math.PI, offset, rotation);
+    }
+
+    private SinusoidalSupplier(Particle particle, float radius,
+                               CurveSampling sampling, double span,
+                               float offset, float rotation) {
+        DoubleFunction<Vector3> curve = angle -> new Vector3(
+                0,
+                0,
+                TrailMath.sin((float) angle)
+        ).mul(radius).rotateY(rotation);
+
+        float[] angles = sampling.sample(curve, offset, span, true);
+        particles = new SuppliedParticle[angles.length];
+        for (int i = 0; i < angles.length; i++) {
+            particles[i] = new SuppliedParticle(particle,
+                    curve.apply(angles[i]));
         }
     }
 
@@ -56,4 +91,15 @@ public class SinusoidalSupplier implements ParticleSupplier {
     public Stream<SuppliedParticle> supply(int tick) {
         return Stream.of(particles[tick % particles.length]);
     }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        SuppliedParticle p = particles[tick % particles.length];
+        sink.accept(p.particle, p.position.x, p.position.y, p.position.z);
+    }
+
+    @Override
+    public int period() {
+        return particles.length;
+    }
 }
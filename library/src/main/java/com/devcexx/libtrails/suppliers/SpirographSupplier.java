@@ -24,11 +24,52 @@ import java.util.stream.Stream;
 /**
  * Represents a trail defined by a curve that can be generated by a
  * Spirograph.
+ *
+ * By default, all the points of the curve are computed when the supplier is
+ * created. Since the period of the curve grows with the ratio between the
+ * radii, curves with awkward ratios can have a huge number of points, so the
+ * supplier can also be created in lazy mode: the points are computed when
+ * they are emitted, and the curve can be emitted in segments, one per
+ * appearance, so it is drawn progressively. The last emitted segments can
+ * be kept in a bounded cache, so segments that are emitted again don't need
+ * to be recomputed. A lazy curve can also be placed by a
+ * {@link CurveSampling}, in which case each segment covers the same range of
+ * the angle, and it is sampled independently when it is computed. Such a
+ * curve must cache at least one segment, so it isn't sampled again on every
+ * appearance.
  */
 public abstract class SpirographSupplier implements ParticleSupplier {
+
+    /**
+     * The points of the curve, or null if the curve is lazy.
+     */
     public final SuppliedParticle[] particles;
     public final int appearingInterval;
 
+    /**
+     * The number of points of the whole curve, or 0 if the curve is lazy and
+     * placed by a {@link CurveSampling}, since the number of points of each
+     * segment is only known when it is sampled.
+     */
+    public final int steps;
+
+    /**
+     * The number of points emitted on each appearance. It is equal to
+     * {@link #steps} unless the curve is lazy and drawn in segments, and it
+     * is 0 if the curve is lazy and placed by a {@link CurveSampling}.
+     */
+    public final int segmentLength;
+
+    private final Particle particle;
+    private final float delta;
+    private final float directorRadius;
+    private final float rollingRadius;
+    private final float hdist;
+    private final CurveSampling sampling;
+    private final double finalAngle;
+    private final int segments;
+    private final Segment[] cache;
+
     /**
      * Builds a new epitrochoid trail.
      * @param particle The particle that will be spawned.
@@ -43,6 +84,95 @@ public abstract class SpirographSupplier implements ParticleSupplier {
     public SpirographSupplier(Particle particle, float delta,
                                float directorRadius, float rollingRadius,
                                float hdist, int appearingInterval) {
+        this(particle, CurveSampling.uniform(delta), delta, directorRadius,
+                rollingRadius, hdist, appearingInterval, false, 0, 0, 0);
+    }
+
+    /**
+     * Builds a new trail whose points are placed by the specified sampling.
+     * @param particle The particle that will be spawned.
+     * @param sampling The sampling that determines the points of the curve,
+     *                 whose parameter is the angle, in radians.
+     * @param directorRadius The radius of the fixed circumference.
+     * @param rollingRadius The radius of the rolling circumference.
+     * @param hdist The distance between the center of the rolling center to
+     *              the point that will be used to draw the curve.
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each drawing.
+     */
+    public SpirographSupplier(Particle particle, CurveSampling sampling,
+                              float directorRadius, float rollingRadius,
+                              float hdist, int appearingInterval) {
+        this(particle, sampling, 0, directorRadius, rollingRadius, hdist,
+                appearingInterval, false, 0, 0, 0);
+    }
+
+    /**
+     * Builds a new lazy trail, whose points are computed when they are
+     * emitted.
+     * @param particle The particle that will be spawned.
+     * @param delta The variation of the angle per drawn point.
+     * @param directorRadius The radius of the fixed circumference.
+     * @param rollingRadius The radius of the rolling circumference.
+     * @param hdist The distance between the center of the rolling center to
+     *              the point that will be used to draw the curve.
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each drawing.
+     * @param segmentLength the number of points drawn on each appearance, or
+     *                      0 to draw the whole curve each time.
+     * @param cachedSegments the maximum number of segments whose points are
+     *                       kept in memory, or 0 to always compute them.
+     */
+    public SpirographSupplier(Particle particle, float delta,
+                              float directorRadius, float rollingRadius,
+                              float hdist, int appearingInterval,
+                              int segmentLength, int cachedSegments) {
+        this(particle, null, delta, directorRadius, rollingRadius, hdist,
+                appearingInterval, true, segmentLength, 0, cachedSegments);
+    }
+
+    /**
+     * Builds a new lazy trail whose points are placed by the specified
+     * sampling. The curve is divided in segments that cover the same range
+     * of the angle, which are sampled when they are emitted.
+     * @param particle The particle that will be spawned.
+     * @param sampling The sampling that determines the points of each
+     *                 segment, whose parameter is the angle, in radians.
+     * @param directorRadius The radius of the fixed circumference.
+     * @param rollingRadius The radius of the rolling circumference.
+     * @param hdist The distance between the center of the rolling center to
+     *              the point that will be used to draw the curve.
+     * @param appearingInterval the time, in Minecraft ticks, that must elapse
+     *                          between each drawing.
+     * @param segments the number of segments the curve is divided in, one
+     *                 drawn on each appearance, or 0 to draw the whole curve
+     *                 each time.
+     * @param cachedSegments the maximum number of segments whose points are
+     *                       kept in memory. Since sampling a segment is
+     *                       expensive, at least 1 segment must be kept.
+     */
+    public SpirographSupplier(Particle particle, CurveSampling sampling,
+                              float directorRadius, float rollingRadius,
+                              float hdist, int appearingInterval,
+                              int segments, int cachedSegments) {
+        this(particle, sampling, 0, directorRadius, rollingRadius, hdist,
+                appearingInterval, true, 0, segments, cachedSegments);
+    }
+
+    private SpirographSupplier(Particle particle, CurveSampling sampling,
+                               float delta,
+                               float directorRadius, float rollingRadius,
+                               float hdist, int appearingInterval,
+                               boolean lazy, int segmentLength,
+                               int segmentCount, int cachedSegments) {
+        if (segmentLength < 0 || segmentCount < 0 || cachedSegments < 0)
+            throw new IllegalArgumentException("The segment length, the " +
+                    "number of segments and the number of cached segments " +
+                    "cannot be negative");
+        if (lazy && sampling != null && cachedSegments == 0)
+            throw new IllegalArgumentException("A sampled lazy curve must " +
+                    "cache at least one segment");
+
         this.appearingInterval = appearingInterval;
 
         //two decimal precision
@@ -54,22 +184,176 @@ public abstract class SpirographSupplier implements ParticleSupplier {
                         (int) (rollingRadius * 100)) / 100.0f));
 
         double finalAngle = period * (rollingRadius / directorRadius) * 2 * Math.PI;
-        int steps = (int) Math.round(finalAngle / delta);
+
+        float R = directorRadius;
+        float r = rollingRadius;
+        float[] thetas = lazy ? null : sampling.sample(
+                theta -> fetchVector(R, r, hdist, (float) theta), 0,
+                finalAngle, true);
+
+        int steps;
+        int segments;
+        if (!lazy) {
+            steps = thetas.length;
+            segments = 1;
+        } else if (sampling == null) {
+            steps = (int) Math.round(finalAngle / delta);
+            if (segmentLength > 0 && segmentLength < steps) {
+                segments = (steps + segmentLength - 1) / segmentLength;
+            } else {
+                segmentLength = steps;
+                segments = 1;
+            }
+        } else {
+            steps = 0;
+            segments = Math.max(1, segmentCount);
+        }
+
+        this.steps = steps;
+        this.particle = particle;
+        this.delta = delta;
+        this.directorRadius = directorRadius;
+        this.rollingRadius = rollingRadius;
+        this.hdist = hdist;
+        this.sampling = lazy ? sampling : null;
+        this.finalAngle = finalAngle;
+        this.segmentLength = lazy ? segmentLength : steps;
+        this.segments = segments;
+        this.cache = lazy && cachedSegments > 0
+                ? new Segment[Math.min(cachedSegments, segments)] : null;
+
+        if (lazy) {
+            particles = null;
+            return;
+        }
+
         particles = new SuppliedParticle[steps];
 
         for (int i = 0; i < steps; i++) {
             particles[i] = new SuppliedParticle(particle,
-                    fetchVector(directorRadius, rollingRadius, hdist, i * delta));
+                    fetchVector(directorRadius, rollingRadius, hdist,
+                            thetas[i]));
+        }
+    }
+
+    /**
+     * Returns the index of the segment emitted at the specified tick.
+     */
+    private int segmentAt(int tick) {
+        return Math.floorMod(Math.floorDiv(tick, appearingInterval), segments);
+    }
+
+    /**
+     * Returns the points of the specified segment, from the cache if they
+     * are there, or computing and caching them otherwise.
+     */
+    private Segment segment(int index) {
+        int slot = index % cache.length;
+        Segment cached = cache[slot];
+        if (cached != null && cached.index == index) {
+            return cached;
+        }
+
+        float[] thetas = null;
+        int from = index * segmentLength;
+        int n;
+        if (sampling != null) {
+            double span = finalAngle / segments;
+            thetas = sampling.sample(theta -> fetchVector(directorRadius,
+                    rollingRadius, hdist, (float) theta),
+                    (float) (index * span), span, true);
+            n = thetas.length;
+        } else {
+            n = Math.min(steps, from + segmentLength) - from;
+        }
+
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        float[] zs = new float[n];
+        for (int i = 0; i < n; i++) {
+            Vector3 v = fetchVector(directorRadius, rollingRadius, hdist,
+                    thetas != null ? thetas[i] : (from + i) * delta);
+            xs[i] = v.x;
+            ys[i] = v.y;
+            zs[i] = v.z;
         }
+
+        //The arrays are only reachable through final fields, so the segment
+        //can be safely shared with other threads through the cache.
+        Segment segment = new Segment(index, xs, ys, zs);
+        cache[slot] = segment;
+        return segment;
     }
 
     @Override
     public Stream<SuppliedParticle> supply(int tick) {
-        if (tick % appearingInterval == 0)
-            return Arrays.stream(particles);
-        else
+        if (tick % appearingInterval != 0)
             return Stream.of();
+        if (particles != null)
+            return Arrays.stream(particles);
+
+        ParticleBuffer buffer = new ParticleBuffer();
+        supplyInto(tick, buffer);
+        return buffer.stream();
+    }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        if (tick % appearingInterval != 0) {
+            return;
+        }
+
+        if (particles != null) {
+            for (SuppliedParticle p : particles) {
+                sink.accept(p.particle, p.position.x, p.position.y,
+                        p.position.z);
+            }
+        } else if (cache != null) {
+            Segment segment = segment(segmentAt(tick));
+            for (int i = 0; i < segment.xs.length; i++) {
+                sink.accept(particle, segment.xs[i], segment.ys[i],
+                        segment.zs[i]);
+            }
+        } else {
+            int from = segmentAt(tick) * segmentLength;
+            int to = Math.min(steps, from + segmentLength);
+            for (int i = from; i < to; i++) {
+                Vector3 v = fetchVector(directorRadius, rollingRadius, hdist,
+                        i * delta);
+                sink.accept(particle, v.x, v.y, v.z);
+            }
+        }
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return tick % appearingInterval == 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return tick + Math.floorMod(-tick, appearingInterval);
+    }
+
+    @Override
+    public int period() {
+        long period = (long) appearingInterval * segments;
+        return period <= Integer.MAX_VALUE ? (int) period : 0;
     }
 
     protected abstract Vector3 fetchVector(float R, float r, float h, float theta);
+
+    private static final class Segment {
+        final int index;
+        final float[] xs;
+        final float[] ys;
+        final float[] zs;
+
+        Segment(int index, float[] xs, float[] ys, float[] zs) {
+            this.index = index;
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+        }
+    }
 }
@@ -17,8 +17,10 @@
 package com.devcexx.libtrails.suppliers;
 
 import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleSink;
 import com.devcexx.libtrails.ParticleSupplier;
 import com.devcexx.libtrails.SuppliedParticle;
+import com.devcexx.libtrails.TrailMath;
 import com.devcexx.libtrails.TrailUtil;
 import com.devcexx.libtrails.Vector3;
 
@@ -55,8 +57,8 @@ public class StarSupplier implements ParticleSupplier {
         float midAngle = fullAngle / 2.0f;
         double linesLength = new Vector3(highRadius, 0, 0)
                 .sub(
-                        lowRadius * (float) Math.cos(midAngle),
-                        lowRadius * (float) Math.sin(midAngle), 0
+                        lowRadius * (float) TrailMath.cos(midAngle),
+                        lowRadius * (float) TrailMath.sin(midAngle), 0
                 ).norm();
 
         int pointsPerLine = (int) Math.round(linesLength / step);
@@ -68,18 +70,19 @@ public class StarSupplier implements ParticleSupplier {
             double lowAngle = highAngle  + midAngle;
             double nextHighAngle = highAngle + fullAngle;
 
-            Vector3 ptFrom = new Vector3(highRadius * Math.cos(highAngle), 0,
-                    highRadius * Math.sin(highAngle));
-            Vector3 ptTo = new Vector3(lowRadius * Math.cos(lowAngle), 0,
-                    lowRadius * Math.sin(lowAngle));
+            Vector3 ptFrom = new Vector3(
+                    highRadius * TrailMath.cos(highAngle), 0,
+                    highRadius * TrailMath.sin(highAngle));
+            Vector3 ptTo = new Vector3(lowRadius * TrailMath.cos(lowAngle), 0,
+                    lowRadius * TrailMath.sin(lowAngle));
 
             TrailUtil.fillWithLine(particles, particle, index,
                     ptFrom, ptTo.sub(ptFrom).normalize(), step, pointsPerLine);
             index += pointsPerLine;
 
             ptFrom = ptTo;
-            ptTo = new Vector3(highRadius * Math.cos(nextHighAngle), 0,
-                    highRadius * Math.sin(nextHighAngle));
+            ptTo = new Vector3(highRadius * TrailMath.cos(nextHighAngle), 0,
+                    highRadius * TrailMath.sin(nextHighAngle));
 
             TrailUtil.fillWithLine(particles, particle, index,
                     ptFrom, ptTo.sub(ptFrom).normalize(), step, pointsPerLine);
@@ -95,4 +98,29 @@ public class StarSupplier implements ParticleSupplier {
             return Stream.of();
         }
     }
+
+    @Override
+    public void supplyInto(int tick, ParticleSink sink) {
+        if (tick % appearingInterval == 0) {
+            for (SuppliedParticle p : particles) {
+                sink.accept(p.particle, p.position.x, p.position.y,
+                        p.position.z);
+            }
+        }
+    }
+
+    @Override
+    public int period() {
+        return appearingInterval;
+    }
+
+    @Override
+    public boolean isActive(int tick) {
+        return tick % appearingInterval == 0;
+    }
+
+    @Override
+    public int nextActiveTick(int tick) {
+        return tick + Math.floorMod(-tick, appearingInterval);
+    }
 }
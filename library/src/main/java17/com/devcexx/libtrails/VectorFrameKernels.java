@@ -0,0 +1,53 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementation of the kernels of {@link FrameKernels} using the Vector API.
+ * This class must only be loaded if the module {@code jdk.incubator.vector}
+ * is present. The last points that don't fill a whole vector are transformed
+ * by {@link ScalarFrameKernels}.
+ */
+final class VectorFrameKernels {
+
+    private static final VectorSpecies<Float> SPECIES =
+            FloatVector.SPECIES_PREFERRED;
+
+    private VectorFrameKernels() {
+    }
+
+    static void affine(Transform3 t, float[] xs, float[] ys, float[] zs,
+                       int from, int to) {
+        int bound = from + SPECIES.loopBound(to - from);
+        for (int i = from; i < bound; i += SPECIES.length()) {
+            FloatVector x = FloatVector.fromArray(SPECIES, xs, i);
+            FloatVector y = FloatVector.fromArray(SPECIES, ys, i);
+            FloatVector z = FloatVector.fromArray(SPECIES, zs, i);
+
+            x.mul(t.m00).add(y.mul(t.m01)).add(z.mul(t.m02)).add(t.m03)
+                    .intoArray(xs, i);
+            x.mul(t.m10).add(y.mul(t.m11)).add(z.mul(t.m12)).add(t.m13)
+                    .intoArray(ys, i);
+            x.mul(t.m20).add(y.mul(t.m21)).add(z.mul(t.m22)).add(t.m23)
+                    .intoArray(zs, i);
+        }
+        ScalarFrameKernels.affine(t, xs, ys, zs, bound, to);
+    }
+}
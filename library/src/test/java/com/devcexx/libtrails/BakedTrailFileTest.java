@@ -0,0 +1,143 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Effect;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class BakedTrailFileTest {
+
+    private static final Particle[] PARTICLES = {
+            Particle.builder().effect(Effect.FLAME).radius(16).build(),
+            Particle.builder().effect(Effect.SPELL).radius(32).data(3)
+                    .offsetX(0.5f).speed(1).build()
+    };
+
+    /**
+     * A supplier with a period of 3 ticks, whose frames have a different
+     * number of particles.
+     */
+    private static final ParticleSupplier SUPPLIER = new ParticleSupplier() {
+        @Override
+        public Stream<SuppliedParticle> supply(int tick) {
+            ParticleBuffer frame = new ParticleBuffer();
+            supplyInto(tick, frame);
+            return frame.stream();
+        }
+
+        @Override
+        public void supplyInto(int tick, ParticleSink sink) {
+            int t = tick % 3;
+            for (int i = 0; i < t * 2; i++) {
+                sink.accept(PARTICLES[(t + i) % 2], t, i, -i);
+            }
+        }
+
+        @Override
+        public int period() {
+            return 3;
+        }
+    };
+
+    private static void assertSameFrames(MappedBakedSupplier baked,
+                                         boolean sameParticles) {
+        for (int tick = 0; tick < 6; tick++) {
+            ParticleBuffer expected = new ParticleBuffer();
+            ParticleBuffer actual = new ParticleBuffer();
+            SUPPLIER.supplyInto(tick, expected);
+            baked.supplyInto(tick, actual);
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Particle p = expected.particle(i);
+                Particle q = actual.particle(i);
+                if (sameParticles) {
+                    assertSame(p, q);
+                } else {
+                    assertEquals(p.getEffect(), q.getEffect());
+                    assertEquals(p.getData(), q.getData());
+                    assertEquals(p.getRadius(), q.getRadius());
+                    assertEquals(p.getOffsetX().apply(0),
+                            q.getOffsetX().apply(0), 0);
+                    assertEquals(p.getSpeed().apply(0),
+                            q.getSpeed().apply(0), 0);
+                }
+                assertEquals(expected.x(i), actual.x(i), 0);
+                assertEquals(expected.y(i), actual.y(i), 0);
+                assertEquals(expected.z(i), actual.z(i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        Path file = Files.createTempFile("baked", ".ltbk");
+        try {
+            BakedTrailFile.write(SUPPLIER, 3, file);
+            MappedBakedSupplier baked = BakedTrailFile.load(file);
+            assertEquals(3, baked.period());
+            assertSameFrames(baked, false);
+
+            //The particles are given in the order they were first emitted.
+            Particle[] palette = {PARTICLES[1], PARTICLES[0]};
+            assertSameFrames(BakedTrailFile.load(file, palette), true);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedPaletteIsRejected() throws IOException {
+        Path file = Files.createTempFile("baked", ".ltbk");
+        try {
+            BakedTrailFile.write(SUPPLIER, 3, file);
+            byte[] bytes = Files.readAllBytes(file);
+            ByteBuffer.wrap(bytes).putInt(12, Integer.MAX_VALUE);
+            Files.write(file, bytes);
+            BakedTrailFile.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void failedWriteDeletesTheFile() throws IOException {
+        Path file = Files.createTempFile("baked", ".ltbk");
+        ParticleSupplier failing = tick -> {
+            throw new IllegalStateException();
+        };
+        try {
+            BakedTrailFile.write(failing, 3, file);
+            fail();
+        } catch (IllegalStateException ex) {
+            assertFalse(Files.exists(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
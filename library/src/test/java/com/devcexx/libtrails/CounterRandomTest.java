@@ -0,0 +1,78 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CounterRandomTest {
+
+    @Test
+    public void sameCounterGivesSameSequence() {
+        CounterRandom a = new CounterRandom(42).at(7, 3);
+        CounterRandom b = new CounterRandom(42).at(7, 3);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(a.nextLong(), b.nextLong());
+        }
+    }
+
+    @Test
+    public void differentCountersGiveDifferentSequences() {
+        long a = new CounterRandom(42).at(7, 3).nextLong();
+        assertTrue(a != new CounterRandom(42).at(7, 4).nextLong());
+        assertTrue(a != new CounterRandom(42).at(8, 3).nextLong());
+        assertTrue(a != new CounterRandom(43).at(7, 3).nextLong());
+    }
+
+    @Test
+    public void floatsAreInUnitInterval() {
+        CounterRandom random = new CounterRandom(1);
+        for (int i = 0; i < 100000; i++) {
+            float f = random.nextFloat();
+            assertTrue(f >= 0 && f < 1);
+        }
+    }
+
+    @Test
+    public void boundedIntsAreInRange() {
+        CounterRandom random = new CounterRandom(1);
+        for (int i = 0; i < 100000; i++) {
+            int n = random.nextInt(7);
+            assertTrue(n >= 0 && n < 7);
+        }
+    }
+
+    @Test
+    public void gaussianHasZeroMeanAndUnitVariance() {
+        CounterRandom random = new CounterRandom(1234);
+        int n = 1000000;
+        double sum = 0;
+        double sumSq = 0;
+        for (int i = 0; i < n; i++) {
+            double g = random.nextGaussian();
+            sum += g;
+            sumSq += g * g;
+        }
+
+        double mean = sum / n;
+        double variance = sumSq / n - mean * mean;
+        assertEquals(0, mean, 0.01);
+        assertEquals(1, variance, 0.01);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Effect;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DeduplicatedSupplierTest {
+
+    private static final float EPSILON = 0.25f;
+
+    private static final Particle[] PARTICLES = {
+            Particle.builder().effect(Effect.FLAME).radius(16).build(),
+            Particle.builder().effect(Effect.SMOKE).radius(16).build(),
+            Particle.builder().effect(Effect.SPELL).radius(16).build()
+    };
+
+    private static ParticleBuffer randomFrame(Random random, int n,
+                                              float side) {
+        ParticleBuffer frame = new ParticleBuffer();
+        for (int i = 0; i < n; i++) {
+            frame.accept(PARTICLES[random.nextInt(PARTICLES.length)],
+                    (random.nextFloat() - 0.5f) * side,
+                    (random.nextFloat() - 0.5f) * side,
+                    (random.nextFloat() - 0.5f) * side);
+        }
+        return frame;
+    }
+
+    /**
+     * Keeps each particle unless a previously kept one with the same
+     * particle is closer than the distance, comparing every pair.
+     */
+    private static ParticleBuffer bruteForce(ParticleBuffer frame) {
+        ParticleBuffer kept = new ParticleBuffer();
+        for (int i = 0; i < frame.size(); i++) {
+            boolean duplicated = false;
+            for (int j = 0; j < kept.size() && !duplicated; j++) {
+                float dx = kept.x(j) - frame.x(i);
+                float dy = kept.y(j) - frame.y(i);
+                float dz = kept.z(j) - frame.z(i);
+                duplicated = kept.particle(j) == frame.particle(i)
+                        && dx * dx + dy * dy + dz * dz < EPSILON * EPSILON;
+            }
+            if (!duplicated) {
+                kept.accept(frame.particle(i), frame.x(i), frame.y(i),
+                        frame.z(i));
+            }
+        }
+        return kept;
+    }
+
+    private static void assertSameFrame(ParticleBuffer expected,
+                                        ParticleBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.particle(i), actual.particle(i));
+            assertEquals(expected.x(i), actual.x(i), 0);
+            assertEquals(expected.y(i), actual.y(i), 0);
+            assertEquals(expected.z(i), actual.z(i), 0);
+        }
+    }
+
+    @Test
+    public void matchesBruteForceComparison() {
+        Random random = new Random(7);
+        List<ParticleBuffer> frames = new ArrayList<>();
+        frames.add(randomFrame(random, 5000, 8));
+        frames.add(randomFrame(random, 5000, 40));
+        frames.add(randomFrame(random, 300, 2));
+        frames.add(randomFrame(random, 1, 2));
+
+        DeduplicatedSupplier supplier = new DeduplicatedSupplier(
+                tick -> frames.get(tick).stream(), EPSILON);
+
+        //The frames are evaluated twice, so the reused tables are checked
+        //after both bigger and smaller frames.
+        for (int pass = 0; pass < 2; pass++) {
+            for (int tick = 0; tick < frames.size(); tick++) {
+                ParticleBuffer out = new ParticleBuffer();
+                supplier.supplyInto(tick, out);
+                assertSameFrame(bruteForce(frames.get(tick)), out);
+            }
+        }
+    }
+
+    @Test
+    public void nestedSuppliersDoNotShareTables() {
+        Random random = new Random(11);
+        ParticleBuffer frame = randomFrame(random, 2000, 6);
+        DeduplicatedSupplier inner = new DeduplicatedSupplier(
+                tick -> frame.stream(), EPSILON);
+        DeduplicatedSupplier outer = new DeduplicatedSupplier(inner,
+                EPSILON);
+
+        ParticleBuffer out = new ParticleBuffer();
+        outer.supplyInto(0, out);
+        assertSameFrame(bruteForce(frame), out);
+    }
+}
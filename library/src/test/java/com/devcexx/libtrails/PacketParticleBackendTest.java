@@ -0,0 +1,208 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Effect;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PacketParticleBackendTest {
+
+    private static final int PACKET_ID = 0x22;
+
+    private final Map<Player, RecordingPacketChannel> channels =
+            new HashMap<>();
+    private final PacketParticleBackend backend =
+            new PacketParticleBackend(PACKET_ID, channels::get);
+
+    private static Particle flame(int radius) {
+        return Particle.builder().effect(Effect.FLAME).radius(radius)
+                .count(1).build();
+    }
+
+    private static Player player(double x, double y, double z,
+                                 CountingSpigot spigot) {
+        Location location = new Location(null, x, y, z);
+        return (Player) Proxy.newProxyInstance(
+                Player.class.getClassLoader(), new Class<?>[] {Player.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getLocation":
+                            return location;
+                        case "spigot":
+                            return spigot;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private Player viewer(double x, double y, double z) {
+        Player player = player(x, y, z, new CountingSpigot());
+        channels.put(player, new RecordingPacketChannel());
+        return player;
+    }
+
+    @Test
+    public void everyViewerReceivesTheSameBytes() {
+        List<Player> viewers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            viewers.add(viewer(i, 0, 0));
+        }
+
+        ParticleBuffer frame = new ParticleBuffer();
+        Particle particle = flame(16);
+        for (int i = 0; i < 5; i++) {
+            frame.accept(particle, i, 1, 2);
+        }
+        backend.send(viewers, frame, 0);
+        backend.flush();
+
+        List<byte[]> expected = channels.get(viewers.get(0)).getFlushed();
+        assertEquals(5, expected.size());
+        for (Player viewer : viewers) {
+            List<byte[]> packets = channels.get(viewer).getFlushed();
+            assertEquals(expected.size(), packets.size());
+            for (int i = 0; i < packets.size(); i++) {
+                assertArrayEquals(expected.get(i), packets.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void channelsAreFlushedOncePerTick() {
+        Player near = viewer(0, 0, 0);
+        Player far = viewer(1000, 0, 0);
+        List<Player> viewers = Arrays.asList(near, far);
+
+        ParticleBuffer frame = new ParticleBuffer();
+        frame.accept(flame(16), 1, 0, 0);
+        backend.send(viewers, frame, 0);
+        backend.send(viewers, frame, 0);
+
+        RecordingPacketChannel channel = channels.get(near);
+        assertEquals(0, channel.getFlushes());
+        assertEquals(2, channel.getPending().size());
+
+        backend.flush();
+        assertEquals(1, channel.getFlushes());
+        assertEquals(2, channel.getFlushed().size());
+        assertEquals(0, channels.get(far).getFlushes());
+
+        backend.flush();
+        assertEquals(1, channel.getFlushes());
+    }
+
+    @Test
+    public void particlesOutOfTheRadiusAreFiltered() {
+        Player viewer = viewer(0, 0, 0);
+
+        ParticleBuffer frame = new ParticleBuffer();
+        Particle particle = flame(16);
+        frame.accept(particle, 10, 0, 0);
+        frame.accept(particle, 20, 0, 0);
+        frame.accept(particle, 0, -15, 0);
+        backend.send(viewer, frame, 0);
+        backend.flush();
+
+        List<byte[]> packets = channels.get(viewer).getFlushed();
+        assertEquals(2, packets.size());
+
+        //The position follows the packet id, the particle id and the long
+        //distance flag.
+        ByteBuffer first = ByteBuffer.wrap(packets.get(0));
+        assertEquals(PACKET_ID, first.get());
+        assertEquals(PacketParticleBackend.particleId(Effect.FLAME),
+                first.getInt());
+        first.get();
+        assertEquals(10.0f, first.getFloat(), 0);
+        ByteBuffer second = ByteBuffer.wrap(packets.get(1));
+        second.position(6);
+        assertEquals(0.0f, second.getFloat(), 0);
+        assertEquals(-15.0f, second.getFloat(), 0);
+    }
+
+    @Test
+    public void playersWithoutChannelFallBackToSpigot() {
+        int[] lookups = {0};
+        PacketParticleBackend failing = new PacketParticleBackend(PACKET_ID,
+                player -> {
+                    lookups[0]++;
+                    throw new IllegalStateException("No connection");
+                });
+        CountingSpigot spigot = new CountingSpigot();
+        Player viewer = player(0, 0, 0, spigot);
+
+        ParticleBuffer frame = new ParticleBuffer();
+        frame.accept(flame(16), 1, 0, 0);
+        frame.accept(flame(16), 2, 0, 0);
+        failing.send(viewer, frame, 0);
+        failing.send(viewer, frame, 1);
+        failing.flush();
+
+        assertEquals(1, lookups[0]);
+        assertEquals(4, spigot.effects);
+    }
+
+    @Test
+    public void effectsThatAreNotParticlesUseTheApi() {
+        CountingSpigot spigot = new CountingSpigot();
+        Player viewer = player(0, 0, 0, spigot);
+        RecordingPacketChannel channel = new RecordingPacketChannel();
+        channels.put(viewer, channel);
+
+        ParticleBuffer frame = new ParticleBuffer();
+        frame.accept(Particle.builder().effect(Effect.CLICK1).radius(16)
+                .build(), 1, 0, 0);
+        frame.accept(flame(16), 1, 0, 0);
+        backend.send(viewer, frame, 0);
+        backend.flush();
+
+        assertEquals(1, spigot.effects);
+        assertEquals(1, channel.getFlushed().size());
+        assertTrue(PacketParticleBackend.particleId(Effect.CLICK1) < 0);
+    }
+
+    private static final class CountingSpigot extends Player.Spigot {
+        int effects;
+
+        @Override
+        public void playEffect(Location location, Effect effect, int id,
+                               int data, float offsetX, float offsetY,
+                               float offsetZ, float speed, int particleCount,
+                               int radius) {
+            effects++;
+        }
+    }
+}
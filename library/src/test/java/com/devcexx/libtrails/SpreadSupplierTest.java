@@ -0,0 +1,78 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Effect;
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpreadSupplierTest {
+
+    private static final Particle PARTICLE =
+            Particle.builder().effect(Effect.FLAME).radius(16).build();
+
+    /**
+     * A source with a period of 5 ticks, whose frames are made of 6
+     * particles placed at the tick of the frame, that counts its
+     * evaluations.
+     */
+    private static final class CountingSource implements ParticleSupplier {
+        int evaluations;
+
+        @Override
+        public Stream<SuppliedParticle> supply(int tick) {
+            evaluations++;
+            return IntStream.range(0, 6).mapToObj(i -> new SuppliedParticle(
+                    PARTICLE, new Vector3(tick, i, 0)));
+        }
+
+        @Override
+        public int period() {
+            return 5;
+        }
+    }
+
+    @Test
+    public void periodNotMultipleOfTicksDoesNotEvictFrames() {
+        CountingSource source = new CountingSource();
+        SpreadSupplier supplier = new SpreadSupplier(source, 3, 0);
+
+        for (int tick = 0; tick < 60; tick++) {
+            ParticleBuffer out = new ParticleBuffer();
+            supplier.supplyInto(tick, out);
+
+            //Each tick emits a slice of 2 particles of each frame of the
+            //last 3 ticks.
+            int[] emitted = new int[5];
+            for (int i = 0; i < out.size(); i++) {
+                emitted[(int) out.x(i)]++;
+            }
+            for (int back = 0; back < 3; back++) {
+                assertEquals(2, emitted[Math.floorMod(tick - back, 5)]);
+            }
+        }
+
+        //Each frame is evaluated once, when it enters the window. The first
+        //tick also evaluates the 2 frames of the previous period that are
+        //still being spread.
+        assertEquals(62, source.evaluations);
+    }
+}
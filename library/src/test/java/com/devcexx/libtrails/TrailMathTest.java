@@ -0,0 +1,126 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrailMathTest {
+
+    private static final double ANGLE_RANGE = 16 * Math.PI;
+    private static final int ANGLE_STEPS = 1 << 20;
+
+    @After
+    public void restoreDefaults() {
+        TrailMath.setPrecision(TrailMath.Precision.LEGACY);
+        TrailMath.setNewtonIterations(2);
+    }
+
+    /**
+     * Returns the maximum relative error of the function against the
+     * reference, sweeping the mantissas of the normal float exponents.
+     */
+    private static double maxRelativeError(DoubleUnaryOperator function,
+                                           DoubleUnaryOperator reference) {
+        double max = 0;
+        for (int exponent = -126; exponent <= 127; exponent++) {
+            double scale = Math.scalb(1.0, exponent);
+            for (int k = 0; k < 4000; k++) {
+                double n = scale * (1 + k / 1000.0);
+                double expected = reference.applyAsDouble(n);
+                max = Math.max(max, Math.abs(function.applyAsDouble(n)
+                        - expected) / expected);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the maximum absolute error of the function against the
+     * reference, sweeping the interval [-16π, 16π].
+     */
+    private static double maxAbsoluteError(DoubleUnaryOperator function,
+                                           DoubleUnaryOperator reference) {
+        double max = 0;
+        for (int i = 0; i <= ANGLE_STEPS; i++) {
+            double angle = -ANGLE_RANGE + 2 * ANGLE_RANGE * i / ANGLE_STEPS;
+            max = Math.max(max, Math.abs(function.applyAsDouble(angle)
+                    - reference.applyAsDouble(angle)));
+        }
+        return max;
+    }
+
+    private static void assertSqrtError(double error) {
+        assertTrue(maxRelativeError(TrailMath::sqrt, Math::sqrt) <= error);
+        assertTrue(maxRelativeError(TrailMath::isqrt,
+                n -> 1 / Math.sqrt(n)) <= error);
+    }
+
+    private static void assertTrigError(double error) {
+        assertTrue(maxAbsoluteError(TrailMath::sin, StrictMath::sin)
+                <= error);
+        assertTrue(maxAbsoluteError(TrailMath::cos, StrictMath::cos)
+                <= error);
+    }
+
+    @Test
+    public void legacyIsTheDefault() {
+        assertEquals(TrailMath.Precision.LEGACY, TrailMath.getPrecision());
+    }
+
+    @Test
+    public void strictIsCorrectlyRounded() {
+        TrailMath.setPrecision(TrailMath.Precision.STRICT);
+        assertSqrtError(0);
+        assertTrigError(0);
+    }
+
+    @Test
+    public void legacyMatchesDocumentedError() {
+        TrailMath.setPrecision(TrailMath.Precision.LEGACY);
+        assertSqrtError(1.8e-3);
+        assertEquals(0, maxAbsoluteError(TrailMath::sin, Math::sin), 0);
+        assertEquals(0, maxAbsoluteError(TrailMath::cos, Math::cos), 0);
+        assertEquals(TrailUtil.sqrt(2), TrailMath.sqrt(2), 0);
+    }
+
+    @Test
+    public void fastMatchesDocumentedError() {
+        TrailMath.setPrecision(TrailMath.Precision.FAST);
+        assertSqrtError(4.6e-6);
+        assertTrigError(3.6e-7);
+    }
+
+    @Test
+    public void fastWithOneIterationMatchesDocumentedError() {
+        TrailMath.setPrecision(TrailMath.Precision.FAST);
+        TrailMath.setNewtonIterations(1);
+        assertSqrtError(1.8e-3);
+    }
+
+    @Test
+    public void fastestMatchesDocumentedError() {
+        TrailMath.setPrecision(TrailMath.Precision.FASTEST);
+        assertSqrtError(1.8e-3);
+        assertTrigError(7.7e-4);
+    }
+}
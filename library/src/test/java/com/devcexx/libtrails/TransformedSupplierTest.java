@@ -0,0 +1,158 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails;
+
+import org.bukkit.Effect;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TransformedSupplierTest {
+
+    private static final Particle FLAME =
+            Particle.builder().effect(Effect.FLAME).radius(16).build();
+    private static final Particle SMOKE =
+            Particle.builder().effect(Effect.SMOKE).radius(16).build();
+
+    private static ParticleSupplier source() {
+        Random random = new Random(5);
+        ParticleBuffer frame = new ParticleBuffer();
+        for (int i = 0; i < 200; i++) {
+            frame.accept(FLAME, random.nextFloat(), random.nextFloat(),
+                    random.nextFloat());
+        }
+        return tick -> frame.stream();
+    }
+
+    /**
+     * Moves each particle up by the tick, and replaces the particles of the
+     * even positions by smoke.
+     */
+    private static final FrameTransformer LIFT = (frame, from, to, tick) -> {
+        float[] ys = frame.ys();
+        for (int i = from; i < to; i++) {
+            ys[i] += tick;
+            if (i % 2 == 0) {
+                frame.set(i, SMOKE, frame.x(i), frame.y(i), frame.z(i));
+            }
+        }
+    };
+
+    private static SuppliedParticle lift(SuppliedParticle p, int index,
+                                         int tick) {
+        Vector3 v = p.position.add(new Vector3(0, tick, 0));
+        return new SuppliedParticle(index % 2 == 0 ? SMOKE : p.particle, v);
+    }
+
+    private static void assertFrame(List<SuppliedParticle> expected,
+                                    ParticleBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SuppliedParticle p = expected.get(i);
+            assertSame(p.particle, actual.particle(i));
+            assertEquals(p.position.x, actual.x(i), 1e-5f);
+            assertEquals(p.position.y, actual.y(i), 1e-5f);
+            assertEquals(p.position.z, actual.z(i), 1e-5f);
+        }
+    }
+
+    private static ParticleBuffer collect(ParticleSupplier supplier,
+                                          int tick, boolean buffered) {
+        ParticleBuffer out = new ParticleBuffer();
+        if (buffered) {
+            supplier.supplyInto(tick, out);
+        } else {
+            supplier.supplyInto(tick, out::accept);
+        }
+        return out;
+    }
+
+    @Test
+    public void frameTransformerMatchesParticleFunction() {
+        ParticleSupplier source = source();
+        ParticleSupplier supplier = source.scale(t -> 2.0f)
+                .transformFrame(LIFT)
+                .transformVectors(v -> v.add(new Vector3(1, 0, 0)));
+
+        int tick = 3;
+        List<SuppliedParticle> in = source.supply(tick)
+                .collect(Collectors.toList());
+        List<SuppliedParticle> expected = new ArrayList<>();
+        for (int i = 0; i < in.size(); i++) {
+            SuppliedParticle p = in.get(i);
+            p = p.with(p.position.mul(2));
+            p = lift(p, i, tick);
+            expected.add(p.with(p.position.add(new Vector3(1, 0, 0))));
+        }
+
+        assertFrame(expected, collect(supplier, tick, true));
+        assertFrame(expected, collect(supplier, tick, false));
+        ParticleBuffer streamed = new ParticleBuffer();
+        supplier.supply(tick).forEach(p -> streamed.accept(p.particle,
+                p.position.x, p.position.y, p.position.z));
+        assertFrame(expected, streamed);
+    }
+
+    @Test
+    public void frameTransformersOnlySeeTheirFrame() {
+        ParticleSupplier supplier = source().transformFrame(LIFT);
+        ParticleBuffer out = new ParticleBuffer();
+        out.accept(FLAME, 0, 0, 0);
+        supplier.supplyInto(1, out);
+
+        assertEquals(201, out.size());
+        assertSame(FLAME, out.particle(0));
+        assertEquals(0, out.y(0), 0);
+        assertSame(FLAME, out.particle(1));
+        assertSame(SMOKE, out.particle(2));
+    }
+
+    @Test
+    public void consecutiveFrameTransformersAreFused() {
+        ParticleSupplier supplier = source().transformFrame(LIFT)
+                .transformFrame(LIFT);
+        assertEquals(1, ((TransformedSupplier) supplier).getOperators()
+                .size());
+
+        ParticleBuffer once = collect(source().transformFrame(LIFT), 2, true);
+        ParticleBuffer twice = collect(supplier, 1, true);
+        for (int i = 0; i < once.size(); i++) {
+            assertEquals(once.y(i), twice.y(i), 1e-5f);
+            assertSame(once.particle(i), twice.particle(i));
+        }
+    }
+
+    @Test
+    public void parallelChainsWithFrameTransformersMatch() {
+        ParticleSupplier supplier = source().translate(t -> new Vector3(
+                0, 0, 1)).transformFrame(LIFT);
+        ParticleBuffer expected = collect(supplier, 4, true);
+        ParticleBuffer actual = collect(new ParallelSupplier(supplier,
+                ParallelSupplier.defaultPool(), 1), 4, true);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.z(i), actual.z(i), 0);
+            assertSame(expected.particle(i), actual.particle(i));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails.suppliers;
+
+import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.SuppliedParticle;
+import com.devcexx.libtrails.TrailMath;
+import com.devcexx.libtrails.Vector3;
+import org.bukkit.Effect;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CurveSamplingTest {
+
+    private static final Particle PARTICLE =
+            Particle.builder().effect(Effect.FLAME).radius(16).build();
+
+    private static final float SPACING = 0.25f;
+
+    private static double gap(SuppliedParticle[] points, int i) {
+        return points[i].position.distance(
+                points[(i + 1) % points.length].position);
+    }
+
+    private static double maxGap(SuppliedParticle[] points) {
+        double max = 0;
+        for (int i = 0; i < points.length; i++) {
+            max = Math.max(max, gap(points, i));
+        }
+        return max;
+    }
+
+    @Test
+    public void uniformStepsTheParameter() {
+        float[] ts = CurveSampling.uniform(0.3f).sample(t -> Vector3.ORIGIN,
+                1, 2 * Math.PI, true);
+        assertEquals(21, ts.length);
+        for (int i = 0; i < ts.length; i++) {
+            assertEquals(1 + 0.3f * i, ts[i], 0);
+        }
+    }
+
+    @Test
+    public void arcLengthKeepsTheSpacing() {
+        HypotrochoidSupplier curve = new HypotrochoidSupplier(PARTICLE,
+                CurveSampling.arcLength(SPACING), 5, 3, 4.5f, 1);
+        SuppliedParticle[] points = curve.particles;
+        //The gaps are measured as chords, which are a bit shorter than the
+        //arcs where the curve bends.
+        for (int i = 0; i < points.length; i++) {
+            assertTrue(gap(points, i) <= SPACING * 1.01);
+            assertTrue(gap(points, i) >= SPACING * 0.95);
+        }
+    }
+
+    @Test
+    public void arcLengthNeedsFewerPointsThanUniform() {
+        HypotrochoidSupplier arc = new HypotrochoidSupplier(PARTICLE,
+                CurveSampling.arcLength(SPACING), 5, 3, 4.5f, 1);
+        assertEquals(252, arc.particles.length);
+
+        //The hypotrochoid closes after 3 turns. The uniform sampling needs
+        //378 points before none of its gaps is bigger than the spacing.
+        int n = arc.particles.length;
+        HypotrochoidSupplier uniform;
+        do {
+            uniform = new HypotrochoidSupplier(PARTICLE,
+                    (float) (6 * Math.PI / n++), 5, 3, 4.5f, 1);
+        } while (maxGap(uniform.particles) > SPACING);
+        assertEquals(378, uniform.particles.length);
+    }
+
+    @Test
+    public void sinusoidalDeltaKeepsItsPoints() {
+        //2π divided by these deltas has a fractional part both below and
+        //above one half, so the truncated number of points is kept.
+        float[] deltas = {0.1f, 0.3f, 0.59f, 0.61f, 1};
+        for (float delta : deltas) {
+            SinusoidalSupplier wave = new SinusoidalSupplier(PARTICLE, 2,
+                    delta, 0.5f, 0.7f);
+            int n = (int) (2 * Math.PI / delta);
+            assertEquals(n, wave.period());
+            for (int i = 0; i < n; i++) {
+                Vector3 expected = new Vector3(0, 0,
+                        TrailMath.sin(0.5f + delta * i)).mul(2).rotateY(0.7f);
+                Vector3 actual = wave.supply(i).findFirst().get().position;
+                assertEquals(expected.x, actual.x, 0);
+                assertEquals(expected.y, actual.y, 0);
+                assertEquals(expected.z, actual.z, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails.suppliers;
+
+import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleBuffer;
+import com.devcexx.libtrails.Vector3;
+import org.bukkit.Effect;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScatteringSupplierTest {
+
+    private static final Particle[] PARTICLES = new Particle[] {
+            Particle.builder().effect(Effect.FLAME).build(),
+            Particle.builder().effect(Effect.SMOKE).build()
+    };
+
+    private static ScatteringSupplier seeded(long seed) {
+        return new ScatteringSupplier(PARTICLES, new Vector3(2, 1, 2),
+                Vector3.ORIGIN, 5, 20, 1, seed);
+    }
+
+    private static ParticleBuffer frame(ScatteringSupplier supplier,
+                                        int tick) {
+        ParticleBuffer buffer = new ParticleBuffer();
+        supplier.supplyInto(tick, buffer);
+        return buffer;
+    }
+
+    private static boolean sameFrame(ParticleBuffer a, ParticleBuffer b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.particle(i) != b.particle(i) || a.x(i) != b.x(i)
+                    || a.y(i) != b.y(i) || a.z(i) != b.z(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void sameSeedAndTickGiveSameFrame() {
+        for (int tick = 0; tick < 50; tick++) {
+            assertTrue(sameFrame(frame(seeded(99), tick),
+                    frame(seeded(99), tick)));
+        }
+    }
+
+    @Test
+    public void seededSupplyMatchesSupplyInto() {
+        ScatteringSupplier supplier = seeded(5);
+        ParticleBuffer streamed = new ParticleBuffer();
+        supplier.supply(3).forEach(p -> streamed.accept(p.particle,
+                p.position.x, p.position.y, p.position.z));
+        assertTrue(sameFrame(frame(supplier, 3), streamed));
+    }
+
+    @Test
+    public void differentTicksGiveDifferentFrames() {
+        ScatteringSupplier supplier = seeded(99);
+        assertFalse(sameFrame(frame(supplier, 1), frame(supplier, 2)));
+    }
+
+    @Test
+    public void unseededSupplierScattersEachFrameDifferently() {
+        ScatteringSupplier supplier = new ScatteringSupplier(PARTICLES,
+                new Vector3(2, 1, 2), Vector3.ORIGIN, 5, 20, 1);
+        assertFalse(sameFrame(frame(supplier, 0), frame(supplier, 0)));
+    }
+
+    @Test
+    public void particleCountIsInRange() {
+        ScatteringSupplier supplier = seeded(7);
+        for (int tick = 0; tick < 200; tick++) {
+            int n = frame(supplier, tick).size();
+            assertTrue(n > 5 && n <= 20);
+        }
+    }
+
+    @Test
+    public void onlyEmitsOnAppearingTicks() {
+        ScatteringSupplier supplier = new ScatteringSupplier(PARTICLES,
+                new Vector3(2, 1, 2), Vector3.ORIGIN, 5, 20, 4, 1);
+        assertEquals(0, frame(supplier, 3).size());
+        assertTrue(frame(supplier, 4).size() > 0);
+    }
+}
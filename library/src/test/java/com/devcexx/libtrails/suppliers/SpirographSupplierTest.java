@@ -0,0 +1,66 @@
+/*
+ *  This file is part of libtrails.
+ *  libtrails is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  libtrails is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with libtrails.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.devcexx.libtrails.suppliers;
+
+import com.devcexx.libtrails.Particle;
+import com.devcexx.libtrails.ParticleBuffer;
+import org.bukkit.Effect;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SpirographSupplierTest {
+
+    private static final Particle PARTICLE =
+            Particle.builder().effect(Effect.FLAME).radius(16).build();
+
+    private static void assertSameFrame(ParticleBuffer expected,
+                                        ParticleBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.particle(i), actual.particle(i));
+            assertEquals(expected.x(i), actual.x(i), 0);
+            assertEquals(expected.y(i), actual.y(i), 0);
+            assertEquals(expected.z(i), actual.z(i), 0);
+        }
+    }
+
+    @Test
+    public void lazySampledCurveWithOneSegmentMatchesEagerCurve() {
+        CurveSampling sampling = CurveSampling.uniform(0.05f);
+        HypotrochoidSupplier eager = new HypotrochoidSupplier(PARTICLE,
+                sampling, 5, 3, 4.5f, 1);
+        HypotrochoidSupplier lazy = new HypotrochoidSupplier(PARTICLE,
+                sampling, 5, 3, 4.5f, 1, 1, 1);
+
+        ParticleBuffer expected = new ParticleBuffer();
+        eager.supplyInto(0, expected);
+        //The second evaluation comes from the cache.
+        for (int tick = 0; tick < 2; tick++) {
+            ParticleBuffer actual = new ParticleBuffer();
+            lazy.supplyInto(tick, actual);
+            assertSameFrame(expected, actual);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lazySampledCurveRequiresCache() {
+        new HypotrochoidSupplier(PARTICLE, CurveSampling.uniform(0.05f),
+                5, 3, 4.5f, 1, 4, 0);
+    }
+}